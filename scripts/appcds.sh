@@ -0,0 +1,48 @@
+#!/bin/sh
+# Records a class data sharing (AppCDS) archive so the app starts faster, then compares startup times.
+#   scripts/appcds.sh          train on the GUI (opens the window once and closes it after the first paint)
+#   scripts/appcds.sh headless train on the command line tools (for servers and pipelines without a display)
+# Afterwards start the app with:
+#   java -XX:SharedArchiveFile=stackexpconviz.jsa -jar stackexpconviz.jar
+# CDS can only archive classes loaded from a jar, so the script packages one first. The archive only works
+# with the same JDK and the same jar, so run this again after rebuilding.
+set -e
+cd "$(dirname "$0")/.."
+
+CLASSES=build/classes
+JAR=stackexpconviz.jar
+ARCHIVE=stackexpconviz.jsa
+MODE=${1:-gui}
+
+rm -rf "$CLASSES"
+javac -encoding UTF-8 -d "$CLASSES" src/*.java
+jar --create --file "$JAR" --main-class StackExpConViz -C "$CLASSES" .
+
+SAMPLE=$(mktemp)
+trap 'rm -f "$SAMPLE"' EXIT
+cat > "$SAMPLE" <<'JSON'
+{"mode": "infix-to-postfix", "expression": "(A + B) * (C - D)"}
+{"mode": "infix-to-prefix", "expression": "A + B * C ^ D"}
+{"mode": "postfix-to-infix", "expression": "AB+CD-*"}
+{"mode": "prefix-to-postfix", "expression": "*+AB-CD"}
+{"operation": "evaluate", "expression": "2 ^ 3 + 1"}
+{"operation": "brackets", "expression": "({[]})"}
+JSON
+
+# Run the app the way it is normally used; JAVA_OPTS adds JVM flags for that run
+run() {
+    if [ "$MODE" = headless ]; then
+        java $JAVA_OPTS -Dstackexpconviz.startupProbe=true -jar "$JAR" --daemon < "$SAMPLE" > /dev/null
+    else
+        java $JAVA_OPTS -Dstackexpconviz.startupProbe=true -Dstackexpconviz.exitAfterStartup=true -jar "$JAR"
+    fi
+}
+
+echo "Training run ($MODE), writing $ARCHIVE"
+rm -f "$ARCHIVE"
+JAVA_OPTS="-XX:ArchiveClassesAtExit=$ARCHIVE" run 2> /dev/null
+
+echo "Without archive:"
+JAVA_OPTS="-Xshare:auto" run 2>&1 | grep '^startup:'
+echo "With archive:"
+JAVA_OPTS="-XX:SharedArchiveFile=$ARCHIVE" run 2>&1 | grep '^startup:'
@@ -0,0 +1,150 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One expression in every notation at once: prefix, postfix, fully bracketed infix (what the
+// converters print) and infix with only the brackets it needs
+// The input is parsed once into a CompactExpression and a single walk over the tree writes all four:
+// prefix text when a node is entered, postfix when it's left, infix in between.
+// Results are kept in a small LRU cache keyed by input and notation, so switching the target
+// notation for the same input, or exporting all of them, doesn't parse again.
+final class AllNotations {
+    // Cache this many inputs (-Dstackexpconviz.notationCacheSize=<n>, 0 turns the cache off)
+    static final int CACHE_SIZE = Integer.getInteger("stackexpconviz.notationCacheSize", 256);
+    // Longer inputs aren't worth keeping four copies of
+    static final int MAX_CACHED_LENGTH = 64 * 1024;
+
+    private static final Map<String, AllNotations> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AllNotations> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    final String prefix;
+    final String postfix;
+    final String infix;
+    final String minimalInfix;
+
+    private AllNotations(String prefix, String postfix, String infix, String minimalInfix) {
+        this.prefix = prefix;
+        this.postfix = postfix;
+        this.infix = infix;
+        this.minimalInfix = minimalInfix;
+    }
+
+    // Cached; throws IllegalArgumentException with the same messages as ExpressionEngine.convert
+    static AllNotations of(String input, ExpressionEngine.Notation from) {
+        if (CACHE_SIZE <= 0 || input.length() > MAX_CACHED_LENGTH) {
+            return parse(input, from);
+        }
+        String key = from.ordinal() + input;
+        synchronized (CACHE) {
+            AllNotations cached = CACHE.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Parse outside the lock; two threads racing on the same input just both do the work
+        AllNotations notations = parse(input, from);
+        synchronized (CACHE) {
+            CACHE.put(key, notations);
+        }
+        return notations;
+    }
+
+    static AllNotations parse(String input, ExpressionEngine.Notation from) {
+        String trimmed = input.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Please enter an expression!");
+        }
+        ExpressionLexer tokens = ExpressionLexer.lex(trimmed, from);
+        if (from == ExpressionEngine.Notation.INFIX) {
+            if (!ExpressionEngine.isValidInfix(tokens)) {
+                throw new IllegalArgumentException("Invalid Infix Expression!");
+            }
+        } else if (tokens.count() < 2) {
+            throw new IllegalArgumentException("Expression must have at least one operator and one operand!");
+        }
+        return write(CompactExpression.fromLexer(tokens, from));
+    }
+
+    // The text ExpressionEngine.convert gives for this target
+    String in(ExpressionEngine.Notation notation) {
+        switch (notation) {
+            case PREFIX:
+                return prefix;
+            case POSTFIX:
+                return postfix;
+            default:
+                return infix;
+        }
+    }
+
+    // Stack entries are node * 3 + step: 0 = enter the node, 1 = between its operands, 2 = leave it
+    // (longs, as in CompactExpression.writeInfix)
+    private static AllNotations write(CompactExpression tree) {
+        int size = tree.size();
+        StringBuilder prefix = new StringBuilder(size * 2);
+        StringBuilder postfix = new StringBuilder(size * 2);
+        StringBuilder infix = new StringBuilder(size * 4);
+        StringBuilder minimal = new StringBuilder(size * 3);
+        // Whether each operator node needs brackets in the minimal form; set by its parent
+        boolean[] bracketed = new boolean[size];
+
+        long[] stack = new long[size * 2 + 1];
+        int top = 0;
+        stack[top++] = tree.root() * 3L;
+        while (top > 0) {
+            long entry = stack[--top];
+            int node = (int) (entry / 3);
+            switch ((int) (entry % 3)) {
+                case 0:
+                    separate(prefix);
+                    if (!tree.isOperator(node)) {
+                        String symbol = tree.symbol(node);
+                        prefix.append(symbol);
+                        separate(postfix).append(symbol);
+                        infix.append(symbol);
+                        minimal.append(symbol);
+                        break;
+                    }
+                    char operator = tree.operator(node);
+                    prefix.append(operator);
+                    infix.append('(');
+                    if (bracketed[node]) {
+                        minimal.append('(');
+                    }
+                    int left = tree.left(node);
+                    int right = tree.right(node);
+                    // Brackets are needed exactly where our parser would group differently without them
+                    if (tree.isOperator(left)) {
+                        bracketed[left] = !ExpressionEngine.popsBefore(tree.operator(left), operator);
+                    }
+                    if (tree.isOperator(right)) {
+                        bracketed[right] = ExpressionEngine.popsBefore(operator, tree.operator(right));
+                    }
+                    stack[top++] = node * 3L + 2;
+                    stack[top++] = right * 3L;
+                    stack[top++] = node * 3L + 1;
+                    stack[top++] = left * 3L;
+                    break;
+                case 1:
+                    infix.append(' ').append(tree.operator(node)).append(' ');
+                    minimal.append(' ').append(tree.operator(node)).append(' ');
+                    break;
+                default:
+                    separate(postfix).append(tree.operator(node));
+                    infix.append(')');
+                    if (bracketed[node]) {
+                        minimal.append(')');
+                    }
+            }
+        }
+        return new AllNotations(prefix.toString(), postfix.toString(), infix.toString(), minimal.toString());
+    }
+
+    // Space between tokens
+    private static StringBuilder separate(StringBuilder out) {
+        return out.length() > 0 ? out.append(' ') : out;
+    }
+}
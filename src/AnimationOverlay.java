@@ -0,0 +1,176 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+
+// One glass pane that draws all the floating "stack element" boxes used by the animations
+// Instead of adding a new JLabel for every moving operand, we keep a pool of sprites and
+// paint them ourselves with Java2D. Moving a sprite only repaints the area it left plus the
+// area it moved into, and fading uses an AlphaComposite instead of new Color objects.
+final class AnimationOverlay extends JComponent {
+    // Same size and colors as the stack elements so the sprites look like they came from the stack
+    static final int SPRITE_WIDTH = 350;
+    static final int SPRITE_HEIGHT = 50;
+    private static final Color SPRITE_BACKGROUND = new Color(46, 139, 87);
+    private static final Color SPRITE_BORDER = Color.BLACK;
+    private static final Font SPRITE_FONT = new Font("Segoe UI", Font.BOLD, 18);
+    private static final Stroke BORDER_STROKE = new BasicStroke(2);
+
+    // Pre-built composites for alpha in steps of 1/20, so fading allocates nothing per frame
+    private static final int ALPHA_LEVELS = 20;
+    private static final AlphaComposite[] COMPOSITES = new AlphaComposite[ALPHA_LEVELS + 1];
+
+    static {
+        for (int i = 0; i <= ALPHA_LEVELS; i++) {
+            COMPOSITES[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, i / (float) ALPHA_LEVELS);
+        }
+    }
+
+    // A floating box with some text in it
+    static final class Sprite {
+        private String text;
+        private int x;
+        private int y;
+        private float alpha;
+        private boolean visible;
+        private Color background;
+
+        String getText() {
+            return text;
+        }
+
+        int getX() {
+            return x;
+        }
+
+        int getY() {
+            return y;
+        }
+    }
+
+    // Sprites currently on screen, in paint order
+    private final ArrayList<Sprite> active = new ArrayList<>();
+    // Released sprites waiting to be reused
+    private final ArrayList<Sprite> free = new ArrayList<>();
+
+    AnimationOverlay() {
+        setOpaque(false);
+        setVisible(false);
+    }
+
+    // Shared by the overlay and the stack elements so every fade uses the same cached composites
+    static AlphaComposite compositeFor(float alpha) {
+        int level = Math.round(Math.max(0f, Math.min(1f, alpha)) * ALPHA_LEVELS);
+        return COMPOSITES[level];
+    }
+
+    // Take a sprite from the pool and show it at (0, 0)
+    Sprite acquire(String text) {
+        Sprite sprite = free.isEmpty() ? new Sprite() : free.remove(free.size() - 1);
+        sprite.text = text;
+        sprite.x = 0;
+        sprite.y = 0;
+        sprite.alpha = 1f;
+        sprite.visible = true;
+        sprite.background = SPRITE_BACKGROUND;
+        active.add(sprite);
+        setVisible(true);
+        repaintSprite(sprite);
+        return sprite;
+    }
+
+    // Give a sprite back to the pool
+    void release(Sprite sprite) {
+        if (active.remove(sprite)) {
+            repaintSprite(sprite);
+            free.add(sprite);
+        }
+        if (active.isEmpty()) {
+            setVisible(false);
+        }
+    }
+
+    // Drop every sprite, e.g. when an animation is cut short
+    void releaseAll() {
+        for (Sprite sprite : active) {
+            repaintSprite(sprite);
+            free.add(sprite);
+        }
+        active.clear();
+        setVisible(false);
+    }
+
+    void moveTo(Sprite sprite, int x, int y) {
+        if (sprite.x == x && sprite.y == y) {
+            return;
+        }
+        // Repaint only the union of where the sprite was and where it is now
+        Rectangle dirty = new Rectangle(sprite.x, sprite.y, SPRITE_WIDTH, SPRITE_HEIGHT);
+        sprite.x = x;
+        sprite.y = y;
+        dirty.add(new Rectangle(x, y, SPRITE_WIDTH, SPRITE_HEIGHT));
+        repaint(dirty.x, dirty.y, dirty.width + 1, dirty.height + 1);
+    }
+
+    void setSpriteVisible(Sprite sprite, boolean visible) {
+        if (sprite.visible != visible) {
+            sprite.visible = visible;
+            repaintSprite(sprite);
+        }
+    }
+
+    void setAlpha(Sprite sprite, float alpha) {
+        if (sprite.alpha != alpha) {
+            sprite.alpha = alpha;
+            repaintSprite(sprite);
+        }
+    }
+
+    void setSpriteBackground(Sprite sprite, Color background) {
+        if (!sprite.background.equals(background)) {
+            sprite.background = background;
+            repaintSprite(sprite);
+        }
+    }
+
+    private void repaintSprite(Sprite sprite) {
+        repaint(sprite.x, sprite.y, SPRITE_WIDTH + 1, SPRITE_HEIGHT + 1);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (active.isEmpty()) {
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setFont(SPRITE_FONT);
+            g2.setStroke(BORDER_STROKE);
+            FontMetrics metrics = g2.getFontMetrics();
+            Rectangle clip = g2.getClipBounds();
+
+            for (Sprite sprite : active) {
+                if (!sprite.visible || sprite.alpha <= 0f) {
+                    continue;
+                }
+                if (clip != null && !clip.intersects(sprite.x, sprite.y, SPRITE_WIDTH, SPRITE_HEIGHT)) {
+                    continue;
+                }
+                g2.setComposite(compositeFor(sprite.alpha));
+
+                g2.setColor(sprite.background);
+                g2.fillRect(sprite.x, sprite.y, SPRITE_WIDTH, SPRITE_HEIGHT);
+                g2.setColor(SPRITE_BORDER);
+                g2.drawRect(sprite.x + 1, sprite.y + 1, SPRITE_WIDTH - 2, SPRITE_HEIGHT - 2);
+
+                // Center the text like a SwingConstants.CENTER label would
+                g2.setColor(Color.WHITE);
+                int textX = sprite.x + (SPRITE_WIDTH - metrics.stringWidth(sprite.text)) / 2;
+                int textY = sprite.y + (SPRITE_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent();
+                g2.drawString(sprite.text, textX, textY);
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+}
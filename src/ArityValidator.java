@@ -0,0 +1,167 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Prefix and postfix validation as a running sum, with the exact place where it goes wrong
+// Every token changes the number of finished subexpressions by a fixed amount: an operand adds one,
+// an operator with arity k takes k and leaves one. Reading postfix left to right, that count has to
+// stay at 1 or more after every token and end at exactly 1. Prefix works with the negated amounts -
+// then the running sum is how many operands are still owed beyond the first, which must not go below
+// 0 until the last token and has to end at -1.
+//
+// Since each token's amount doesn't depend on the others, the running sum is a prefix sum: for big
+// inputs we fill an int[] with the amounts, sum it with Arrays.parallelPrefix and look for the first
+// position below the limit in parallel, so the work is spread over all cores. Small inputs take one
+// sequential pass with the same answers.
+final class ArityValidator {
+    // Token counts below this are checked with one sequential pass
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    // Tokens per task when looking for the first bad position
+    private static final int SEARCH_CHUNK = 1 << 16;
+
+    enum Verdict {
+        VALID,
+        // An operator without enough operands (postfix), or the input ended early (prefix)
+        MISSING_OPERAND,
+        // Operands left without an operator (postfix), or tokens after a finished expression (prefix)
+        EXTRA_OPERAND
+    }
+
+    static final class Result {
+        final Verdict verdict;
+        final ExpressionEngine.Notation notation;
+        // The token where the problem is, the token count if the input ended too early or too late, -1 if valid
+        final int token;
+        // Char offset of that token in the input (the input length for the end), -1 if valid
+        final int offset;
+
+        private Result(Verdict verdict, ExpressionEngine.Notation notation, int token, int offset) {
+            this.verdict = verdict;
+            this.notation = notation;
+            this.token = token;
+            this.offset = offset;
+        }
+
+        boolean isValid() {
+            return verdict == Verdict.VALID;
+        }
+
+        String message() {
+            boolean postfix = notation == ExpressionEngine.Notation.POSTFIX;
+            switch (verdict) {
+                case MISSING_OPERAND:
+                    return postfix ? "Operator is missing an operand" : "Expression ends before all operands are given";
+                case EXTRA_OPERAND:
+                    return postfix ? "Operands left over without an operator" : "Extra tokens after the end of the expression";
+                default:
+                    return "Expression is valid!";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return isValid() ? message() : message() + " at token " + token + " (offset " + offset + ")";
+        }
+    }
+
+    private ArityValidator() {
+    }
+
+    // Prefix or postfix tokens; infix is left to ExpressionEngine.isValidInfix
+    static Result check(ExpressionLexer tokens, ExpressionEngine.Notation notation) {
+        return tokens.count() >= PARALLEL_THRESHOLD ? checkParallel(tokens, notation) : checkSequential(tokens, notation);
+    }
+
+    static Result checkSequential(ExpressionLexer tokens, ExpressionEngine.Notation notation) {
+        boolean postfix = requireNotation(notation);
+        int count = tokens.count();
+        int floor = postfix ? 1 : 0;
+        int sum = 0;
+        for (int t = 0; t < count; t++) {
+            sum += amount(tokens, t, postfix);
+            if (sum < floor && (postfix || t < count - 1)) {
+                return failure(tokens, notation, t);
+            }
+        }
+        return finish(tokens, notation, sum);
+    }
+
+    // Always the parallel pass; check only picks it for big inputs, but any size works
+    static Result checkParallel(ExpressionLexer tokens, ExpressionEngine.Notation notation) {
+        boolean postfix = requireNotation(notation);
+        return check(tokens, notation, runningSums(tokens, postfix));
+    }
+
+    // The running sum after every token, summed in parallel. For postfix that's the stack depth.
+    static int[] runningSums(ExpressionLexer tokens, boolean postfix) {
+        int[] sums = new int[tokens.count()];
+        Arrays.parallelSetAll(sums, t -> amount(tokens, t, postfix));
+        Arrays.parallelPrefix(sums, Integer::sum);
+        return sums;
+    }
+
+    // The verdict for sums that came from runningSums
+    static Result check(ExpressionLexer tokens, ExpressionEngine.Notation notation, int[] sums) {
+        boolean postfix = requireNotation(notation);
+        int count = sums.length;
+        if (count == 0) {
+            return finish(tokens, notation, 0);
+        }
+        // Prefix input may drop below 0 at the very last token - that's where it's supposed to end
+        int floor = postfix ? 1 : 0;
+        int searched = postfix ? count : count - 1;
+        int chunks = (searched + SEARCH_CHUNK - 1) / SEARCH_CHUNK;
+        int first = IntStream.range(0, chunks).parallel()
+                .map(c -> firstBelow(sums, c * SEARCH_CHUNK, Math.min(searched, (c + 1) * SEARCH_CHUNK), floor))
+                .filter(t -> t >= 0)
+                .min().orElse(-1);
+        return first >= 0 ? failure(tokens, notation, first) : finish(tokens, notation, sums[count - 1]);
+    }
+
+    private static int firstBelow(int[] sums, int from, int to, int floor) {
+        for (int t = from; t < to; t++) {
+            if (sums[t] < floor) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    // How the running sum changes at token t
+    private static int amount(ExpressionLexer tokens, int t, boolean postfix) {
+        int arity = OperatorRegistry.arity(tokens.symbol(t));
+        int produced = arity == 0 ? 1 : 1 - arity;
+        return postfix ? produced : -produced;
+    }
+
+    // The running sum first went below the limit at token t
+    private static Result failure(ExpressionLexer tokens, ExpressionEngine.Notation notation, int t) {
+        if (notation == ExpressionEngine.Notation.POSTFIX) {
+            return new Result(Verdict.MISSING_OPERAND, notation, t, tokens.start(t));
+        }
+        // Prefix: the expression was complete at t, so everything from t + 1 on is extra
+        return new Result(Verdict.EXTRA_OPERAND, notation, t + 1, tokens.start(t + 1));
+    }
+
+    // No token went below the limit; the final sum decides
+    private static Result finish(ExpressionLexer tokens, ExpressionEngine.Notation notation, int sum) {
+        int count = tokens.count();
+        int end = tokens.input().length();
+        if (notation == ExpressionEngine.Notation.POSTFIX) {
+            if (sum == 1) {
+                return new Result(Verdict.VALID, notation, -1, -1);
+            }
+            return new Result(sum < 1 ? Verdict.MISSING_OPERAND : Verdict.EXTRA_OPERAND, notation, count, end);
+        }
+        if (sum == -1) {
+            return new Result(Verdict.VALID, notation, -1, -1);
+        }
+        return new Result(Verdict.MISSING_OPERAND, notation, count, end);
+    }
+
+    private static boolean requireNotation(ExpressionEngine.Notation notation) {
+        if (notation == ExpressionEngine.Notation.INFIX) {
+            throw new IllegalArgumentException("Arity checks are for prefix and postfix input");
+        }
+        return notation == ExpressionEngine.Notation.POSTFIX;
+    }
+}
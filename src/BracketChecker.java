@@ -0,0 +1,332 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Headless bracket balance checker for inputs that are far too big to step through in the UI
+// It gives the same verdicts as the Bracket Balancing mode: only ( ) [ ] { } matter, everything
+// else is skipped. Brackets are kept on a plain char[] stack instead of a java.util.Stack<Character>.
+//
+// Big inputs are split into chunks that are checked in parallel. Inside a chunk every bracket that
+// can be matched locally is matched, which leaves a short summary: the closing brackets that had
+// nothing to match in the chunk (they belong to earlier chunks) followed by the opening brackets
+// still waiting for a partner. Merging the summaries left to right gives the same answer, and the
+// same first error, as one sequential pass.
+//
+// Files are scanned as bytes. That works for ASCII and UTF-8 because bracket bytes never show up
+// inside a multi-byte UTF-8 character. Offsets for files are byte offsets.
+final class BracketChecker {
+    // Inputs smaller than this are checked with one sequential pass
+    static final long PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+    // Size of each chunk in the parallel pass
+    static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    // Read buffer for streaming a file sequentially
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    enum Verdict {
+        BALANCED,
+        EXTRA_CLOSING,
+        MISMATCHED,
+        MISSING_CLOSING
+    }
+
+    static final class Result {
+        final Verdict verdict;
+        // Where the first problem was found (the input length for missing closing brackets), -1 if balanced
+        final long offset;
+        // The bracket we ran into, or 0 when the input just ended
+        final char found;
+        // The opening bracket it should have matched, or 0 if there was none
+        final char open;
+
+        private Result(Verdict verdict, long offset, char found, char open) {
+            this.verdict = verdict;
+            this.offset = offset;
+            this.found = found;
+            this.open = open;
+        }
+
+        boolean isBalanced() {
+            return verdict == Verdict.BALANCED;
+        }
+
+        // Same wording as the messages in the visualizer
+        String message() {
+            switch (verdict) {
+                case EXTRA_CLOSING:
+                    return "Unbalanced: Extra closing bracket '" + found + "'";
+                case MISMATCHED:
+                    return "Unbalanced: Mismatched brackets '" + open + "' and '" + found + "'";
+                case MISSING_CLOSING:
+                    return "Unbalanced: Missing closing brackets";
+                default:
+                    return "Expression is balanced!";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return isBalanced() ? message() : message() + " at offset " + offset;
+        }
+    }
+
+    private static final Result BALANCED = new Result(Verdict.BALANCED, -1, (char) 0, (char) 0);
+
+    private BracketChecker() {
+    }
+
+    // Check text that is already in memory - a String, StringBuilder or a CharBuffer from a decoded file
+    static Result check(CharSequence input) {
+        if (input.length() >= PARALLEL_THRESHOLD) {
+            return checkParallel(input, CHUNK_SIZE);
+        }
+        CharStack stack = new CharStack();
+        Result result = scanChars(input, 0, input.length(), stack);
+        return result != null ? result : finish(stack, input.length());
+    }
+
+    // Check a file, streaming it for normal sizes and mapping it in parallel chunks when it is huge
+    static Result check(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= PARALLEL_THRESHOLD) {
+                return checkParallel(channel, size, CHUNK_SIZE);
+            }
+
+            CharStack stack = new CharStack();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            long position = 0;
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                int length = buffer.remaining();
+                Result result = scanBytes(buffer, position, stack);
+                if (result != null) {
+                    return result;
+                }
+                position += length;
+                buffer.clear();
+            }
+            return finish(stack, position);
+        }
+    }
+
+    static boolean isBalanced(CharSequence input) {
+        return check(input).isBalanced();
+    }
+
+    // Sequential scan of input[from, to); returns the first error or null, leaving open brackets on the stack
+    private static Result scanChars(CharSequence input, int from, int to, CharStack stack) {
+        for (int i = from; i < to; i++) {
+            char c = input.charAt(i);
+            if (c == '(' || c == '[' || c == '{') {
+                stack.push(c);
+            } else if (c == ')' || c == ']' || c == '}') {
+                if (stack.isEmpty()) {
+                    return new Result(Verdict.EXTRA_CLOSING, i, c, (char) 0);
+                }
+                char top = stack.pop();
+                if (!matches(top, c)) {
+                    return new Result(Verdict.MISMATCHED, i, c, top);
+                }
+            }
+        }
+        return null;
+    }
+
+    // Same as scanChars but over the remaining bytes of a buffer, with offsets starting at base
+    private static Result scanBytes(ByteBuffer buffer, long base, CharStack stack) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        for (int i = start; i < end; i++) {
+            char c = (char) buffer.get(i);
+            if (c == '(' || c == '[' || c == '{') {
+                stack.push(c);
+            } else if (c == ')' || c == ']' || c == '}') {
+                if (stack.isEmpty()) {
+                    return new Result(Verdict.EXTRA_CLOSING, base + i - start, c, (char) 0);
+                }
+                char top = stack.pop();
+                if (!matches(top, c)) {
+                    return new Result(Verdict.MISMATCHED, base + i - start, c, top);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Result finish(CharStack stack, long length) {
+        if (stack.isEmpty()) {
+            return BALANCED;
+        }
+        return new Result(Verdict.MISSING_CLOSING, length, (char) 0, stack.peek());
+    }
+
+    private static boolean matches(char open, char close) {
+        return (close == ')' && open == '(') ||
+                (close == ']' && open == '[') ||
+                (close == '}' && open == '{');
+    }
+
+    // What is left of one chunk after matching everything we can inside it
+    private static final class ChunkSummary {
+        final long start;
+        // Closing brackets that found an empty stack, with their offsets inside the chunk
+        final CharStack closers = new CharStack();
+        int[] closerOffsets = new int[16];
+        // Opening brackets still open at the end of the chunk (bottom first)
+        final CharStack openers = new CharStack();
+        // First mismatch inside the chunk, -1 if none (nothing after it matters)
+        int errorOffset = -1;
+        char errorFound;
+        char errorOpen;
+
+        ChunkSummary(long start) {
+            this.start = start;
+        }
+
+        void visit(char c, int offset) {
+            if (c == '(' || c == '[' || c == '{') {
+                openers.push(c);
+            } else if (openers.isEmpty()) {
+                if (closers.size() == closerOffsets.length) {
+                    closerOffsets = Arrays.copyOf(closerOffsets, closerOffsets.length * 2);
+                }
+                closerOffsets[closers.size()] = offset;
+                closers.push(c);
+            } else {
+                char top = openers.pop();
+                if (!matches(top, c)) {
+                    errorOffset = offset;
+                    errorFound = c;
+                    errorOpen = top;
+                }
+            }
+        }
+    }
+
+    private static ChunkSummary summarizeChars(CharSequence input, int from, int to) {
+        ChunkSummary summary = new ChunkSummary(from);
+        for (int i = from; i < to && summary.errorOffset < 0; i++) {
+            char c = input.charAt(i);
+            if (c == '(' || c == '[' || c == '{' || c == ')' || c == ']' || c == '}') {
+                summary.visit(c, i - from);
+            }
+        }
+        return summary;
+    }
+
+    private static ChunkSummary summarizeBytes(ByteBuffer chunk, long start) {
+        ChunkSummary summary = new ChunkSummary(start);
+        int end = chunk.limit();
+        for (int i = 0; i < end && summary.errorOffset < 0; i++) {
+            char c = (char) chunk.get(i);
+            if (c == '(' || c == '[' || c == '{' || c == ')' || c == ']' || c == '}') {
+                summary.visit(c, i);
+            }
+        }
+        return summary;
+    }
+
+    // Parallel two-pass check; the chunk size is a parameter so small inputs can exercise it too
+    static Result checkParallel(CharSequence input, int chunkSize) {
+        int length = input.length();
+        int chunks = (int) ((length + (long) chunkSize - 1) / chunkSize);
+        List<ChunkSummary> summaries = IntStream.range(0, chunks).parallel()
+                .mapToObj(i -> summarizeChars(input, i * chunkSize, (int) Math.min(length, (long) (i + 1) * chunkSize)))
+                .collect(Collectors.toList());
+        return merge(summaries, length);
+    }
+
+    static Result checkParallel(FileChannel channel, long size, int chunkSize) throws IOException {
+        int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+        try {
+            List<ChunkSummary> summaries = IntStream.range(0, chunks).parallel()
+                    .mapToObj(i -> {
+                        long start = (long) i * chunkSize;
+                        long length = Math.min(chunkSize, size - start);
+                        try {
+                            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                            return summarizeBytes(chunk, start);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+            return merge(summaries, size);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Second pass: replay the chunk summaries in order against one stack
+    private static Result merge(List<ChunkSummary> summaries, long length) {
+        CharStack stack = new CharStack();
+        for (ChunkSummary summary : summaries) {
+            for (int k = 0; k < summary.closers.size(); k++) {
+                char c = summary.closers.get(k);
+                long offset = summary.start + summary.closerOffsets[k];
+                if (stack.isEmpty()) {
+                    return new Result(Verdict.EXTRA_CLOSING, offset, c, (char) 0);
+                }
+                char top = stack.pop();
+                if (!matches(top, c)) {
+                    return new Result(Verdict.MISMATCHED, offset, c, top);
+                }
+            }
+            if (summary.errorOffset >= 0) {
+                return new Result(Verdict.MISMATCHED, summary.start + summary.errorOffset,
+                        summary.errorFound, summary.errorOpen);
+            }
+            stack.pushAll(summary.openers);
+        }
+        return finish(stack, length);
+    }
+
+    // A growable stack of chars with no boxing and no synchronization
+    static final class CharStack {
+        private char[] items = new char[64];
+        private int size;
+
+        void push(char c) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = c;
+        }
+
+        void pushAll(CharStack other) {
+            if (size + other.size > items.length) {
+                items = Arrays.copyOf(items, Math.max(items.length * 2, size + other.size));
+            }
+            System.arraycopy(other.items, 0, items, size, other.size);
+            size += other.size;
+        }
+
+        char pop() {
+            return items[--size];
+        }
+
+        char peek() {
+            return items[size - 1];
+        }
+
+        char get(int index) {
+            return items[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// An OutputSink that encodes straight into one reusable ByteBuffer and writes it to a channel when full
+// Memory stays at the buffer size however long the output is. Text is written as UTF-8; we encode
+// by hand because nearly everything is ASCII, which is then one byte store per char.
+final class ChannelSink implements OutputSink, AutoCloseable {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    // First half of a surrogate pair, waiting for the second
+    private char highSurrogate;
+
+    ChannelSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    ChannelSink(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        // Room for at least one fully encoded char
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 8));
+    }
+
+    @Override
+    public void append(char c) throws IOException {
+        if (buffer.remaining() < 4) {
+            drain();
+        }
+        if (c < 0x80 && highSurrogate == 0) {
+            buffer.put((byte) c);
+        } else {
+            encode(c);
+        }
+    }
+
+    @Override
+    public void append(CharSequence text, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            if (c < 0x80 && highSurrogate == 0) {
+                buffer.put((byte) c);
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    private void encode(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                return;
+            }
+            // A lone high surrogate, same replacement the JDK's encoder uses. We were called with
+            // 4 bytes free, so there's still room for c (3 bytes at most, as it isn't a pair).
+            buffer.put((byte) '?');
+        }
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    // Flushes, but leaves the channel open - it usually belongs to someone else (like stdout)
+    @Override
+    public void close() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            append('?');
+        }
+        flush();
+    }
+}
@@ -0,0 +1,330 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+
+// An expression tree stored as a few int arrays instead of one object per node
+// Node i is described by opcode[i], left[i] and right[i] - 12 bytes per node, no headers, no pointers.
+//   opcode >= 0   an operator; the value is the operator character
+//   opcode < 0    an operand; ~opcode is its index in the symbol table (each distinct name is stored once)
+// Nodes are numbered in postfix order, so children always come before their parent, the root is
+// the last node, and a plain left-to-right loop visits everything bottom-up. That is all evaluation
+// and postfix output need; prefix and infix output walk the tree with an explicit stack, so
+// even a chain millions of nodes deep can't overflow the call stack.
+final class CompactExpression {
+    private int[] opcode;
+    private int[] left;
+    private int[] right;
+    private int size;
+
+    private final SymbolTable symbols;
+
+    // Building scratch space: indices of finished subtrees; null once the tree is finished
+    private int[] subtrees;
+    private int subtreeCount;
+
+    private CompactExpression(int capacity) {
+        opcode = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        symbols = new SymbolTable();
+        subtrees = new int[capacity];
+    }
+
+    // A tree someone else already laid out in the same format (see ParallelPostfixBuilder)
+    CompactExpression(int[] opcode, int[] left, int[] right, SymbolTable symbols) {
+        this.opcode = opcode;
+        this.left = left;
+        this.right = right;
+        this.symbols = symbols;
+        this.size = opcode.length;
+        this.subtrees = null;
+    }
+
+    // Operands are read straight from the lexer's input; only each distinct name is copied, once
+    static CompactExpression fromLexer(ExpressionLexer tokens, ExpressionEngine.Notation notation) {
+        switch (notation) {
+            case PREFIX:
+                return fromPrefix(tokens);
+            case POSTFIX:
+                return ParallelPostfixBuilder.worthIt(tokens.count()) ? ParallelPostfixBuilder.build(tokens) : fromPostfix(tokens);
+            default:
+                return fromInfix(tokens);
+        }
+    }
+
+    static CompactExpression fromPostfix(ExpressionLexer tokens) {
+        CompactExpression expression = new CompactExpression(tokens.count());
+        for (int t = 0; t < tokens.count(); t++) {
+            char symbol = tokens.symbol(t);
+            if (OperatorRegistry.isBracket(symbol)) {
+                continue;
+            }
+            if (OperatorRegistry.isOperator(symbol)) {
+                expression.addOperator(symbol);
+            } else {
+                expression.addOperand(tokens, t);
+            }
+        }
+        return expression.finish();
+    }
+
+    // Prefix is read left to right too: an operator waits on a stack until both its operands are
+    // finished, then it's added - so nodes still come out in postfix order
+    static CompactExpression fromPrefix(ExpressionLexer tokens) {
+        int count = tokens.count();
+        CompactExpression expression = new CompactExpression(count);
+        char[] waitingOperators = new char[count];
+        // How many operands each waiting operator already has
+        int[] operandsDone = new int[count];
+        int waiting = 0;
+
+        for (int t = 0; t < count; t++) {
+            char symbol = tokens.symbol(t);
+            if (OperatorRegistry.isBracket(symbol)) {
+                continue;
+            }
+            if (OperatorRegistry.isOperator(symbol)) {
+                waitingOperators[waiting] = symbol;
+                operandsDone[waiting++] = 0;
+                continue;
+            }
+            if (waiting == 0 && expression.size > 0) {
+                throw new IllegalArgumentException("Invalid Expression!");
+            }
+            expression.addOperand(tokens, t);
+            // A finished subtree may complete its operator, which may complete the next one, and so on
+            while (waiting > 0 && ++operandsDone[waiting - 1] == 2) {
+                expression.addOperator(waitingOperators[--waiting]);
+            }
+        }
+        if (waiting != 0) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+        return expression.finish();
+    }
+
+    // Shunting-yard, but operators become nodes straight away instead of being written out as text
+    static CompactExpression fromInfix(ExpressionLexer tokens) {
+        int count = tokens.count();
+        CompactExpression expression = new CompactExpression(count);
+        char[] stack = new char[count];
+        int top = 0;
+
+        for (int t = 0; t < count; t++) {
+            char symbol = tokens.symbol(t);
+            if (OperatorRegistry.isOperator(symbol)) {
+                while (top > 0 && !OperatorRegistry.isOpenBracket(stack[top - 1])
+                        && ExpressionEngine.popsBefore(stack[top - 1], symbol)) {
+                    expression.addOperator(stack[--top]);
+                }
+                stack[top++] = symbol;
+            } else if (OperatorRegistry.isOpenBracket(symbol)) {
+                stack[top++] = symbol;
+            } else if (OperatorRegistry.isCloseBracket(symbol)) {
+                while (top > 0 && !OperatorRegistry.isOpenBracket(stack[top - 1])) {
+                    expression.addOperator(stack[--top]);
+                }
+                if (top > 0) {
+                    top--; // the open bracket
+                }
+            } else {
+                expression.addOperand(tokens, t);
+            }
+        }
+        while (top > 0) {
+            char operator = stack[--top];
+            if (!OperatorRegistry.isOpenBracket(operator)) {
+                expression.addOperator(operator);
+            }
+        }
+        return expression.finish();
+    }
+
+    private void addOperand(ExpressionLexer tokens, int token) {
+        int id = symbols.id(tokens.input(), tokens.start(token), tokens.end(token));
+        opcode[size] = ~id;
+        left[size] = -1;
+        right[size] = -1;
+        subtrees[subtreeCount++] = size++;
+    }
+
+    private void addOperator(char operator) {
+        if (subtreeCount < 2) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+        opcode[size] = operator;
+        right[size] = subtrees[--subtreeCount];
+        left[size] = subtrees[--subtreeCount];
+        subtrees[subtreeCount++] = size++;
+    }
+
+    private CompactExpression finish() {
+        if (subtreeCount != 1) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+        subtrees = null;
+        // Capacity was the token count; brackets (in infix) don't become nodes
+        if (size < opcode.length) {
+            opcode = Arrays.copyOf(opcode, size);
+            left = Arrays.copyOf(left, size);
+            right = Arrays.copyOf(right, size);
+        }
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int root() {
+        return size - 1;
+    }
+
+    boolean isOperator(int node) {
+        return opcode[node] >= 0;
+    }
+
+    char operator(int node) {
+        return (char) opcode[node];
+    }
+
+    // Operand name of a leaf
+    String symbol(int node) {
+        return symbols.get(~opcode[node]);
+    }
+
+    int left(int node) {
+        return left[node];
+    }
+
+    int right(int node) {
+        return right[node];
+    }
+
+    // Operators have no entry in the symbol table, so those are written as their character
+    private void appendNode(int node, OutputSink out) throws IOException {
+        if (opcode[node] >= 0) {
+            out.append((char) opcode[node]);
+        } else {
+            out.append(symbols.get(~opcode[node]));
+        }
+    }
+
+    // Operands are numbers or names looked up in variables (each distinct name is looked up once)
+    double evaluate(Map<String, Double> variables) {
+        double[] symbolValues = new double[symbols.size()];
+        for (int s = 0; s < symbolValues.length; s++) {
+            symbolValues[s] = operandValue(symbols.get(s), variables);
+        }
+        // Children come before parents, so one forward pass is enough
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            int code = opcode[i];
+            values[i] = code < 0
+                    ? symbolValues[~code]
+                    : OperatorRegistry.apply((char) code, values[left[i]], values[right[i]]);
+        }
+        return values[size - 1];
+    }
+
+    static double operandValue(String token, Map<String, Double> variables) {
+        if (NumberLiteral.startsNumber(token.charAt(0))) {
+            double value = NumberLiteral.parse(token, 0, token.length());
+            if (Double.isNaN(value)) {
+                throw new IllegalArgumentException("Not a number: " + token);
+            }
+            return value;
+        }
+        Double value = variables == null ? null : variables.get(token);
+        if (value == null) {
+            throw new IllegalArgumentException("No value for variable '" + token + "'");
+        }
+        return value;
+    }
+
+    // Same text the converters produce: space separated prefix/postfix, fully bracketed infix
+    String render(ExpressionEngine.Notation notation) {
+        StringBuilder out = new StringBuilder(size * 4);
+        try {
+            write(notation, OutputSink.of(out));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder doesn't throw
+        }
+        return out.toString();
+    }
+
+    // Stream the expression into a sink token by token, without building it as a String first
+    void write(ExpressionEngine.Notation notation, OutputSink out) throws IOException {
+        switch (notation) {
+            case PREFIX:
+                writePrefix(out);
+                break;
+            case POSTFIX:
+                writePostfix(out);
+                break;
+            default:
+                writeInfix(out);
+        }
+    }
+
+    void writePostfix(OutputSink out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                out.append(' ');
+            }
+            appendNode(i, out);
+        }
+    }
+
+    void writePrefix(OutputSink out) throws IOException {
+        int[] stack = new int[size];
+        int top = 0;
+        stack[top++] = root();
+        boolean first = true;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!first) {
+                out.append(' ');
+            }
+            first = false;
+            appendNode(node, out);
+            if (opcode[node] >= 0) {
+                stack[top++] = right[node];
+                stack[top++] = left[node];
+            }
+        }
+    }
+
+    // Each stack entry is node * 3 + step: 0 = start the node, 1 = write the operator, 2 = close the bracket
+    // (a long, since node * 3 outgrows an int past ~715 million nodes)
+    void writeInfix(OutputSink out) throws IOException {
+        long[] stack = new long[size * 2 + 1];
+        int top = 0;
+        stack[top++] = root() * 3L;
+        while (top > 0) {
+            long entry = stack[--top];
+            int node = (int) (entry / 3);
+            switch ((int) (entry % 3)) {
+                case 0:
+                    if (opcode[node] < 0) {
+                        out.append(symbols.get(~opcode[node]));
+                    } else {
+                        out.append('(');
+                        stack[top++] = node * 3L + 2;
+                        stack[top++] = right[node] * 3L;
+                        stack[top++] = node * 3L + 1;
+                        stack[top++] = left[node] * 3L;
+                    }
+                    break;
+                case 1:
+                    out.append(' ');
+                    out.append((char) opcode[node]);
+                    out.append(' ');
+                    break;
+                default:
+                    out.append(')');
+            }
+        }
+    }
+}
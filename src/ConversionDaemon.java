@@ -0,0 +1,230 @@
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long-running converter for shell pipelines: one JSON request per line on stdin,
+// one JSON response per line on stdout, always in the same order as the requests.
+//   {"mode": "infix-to-postfix", "expression": "A + B"}  ->  {"mode":"Infix to Postfix","result":"A B +"}
+// Any other operation from ConversionService works too ("operation": "evaluate", ...), and an
+// "id" field is copied to the response so callers can match them up.
+//
+// Requests are handed to a worker pool as soon as their line is read, so many are converted at
+// once, and the main thread writes the answers out from the front of the queue as they finish.
+// Everything read in one go from stdin counts as a batch; before waiting for more input we finish
+// the batch, flush stdout and print its latency numbers to stderr.
+final class ConversionDaemon {
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final ExecutorService workers;
+    // Most requests allowed in flight before we wait for the oldest one
+    private final int window;
+    private final ArrayDeque<CompletableFuture<Answer>> pending = new ArrayDeque<>();
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    // Bytes of the line being read, reused for every line
+    private byte[] line = new byte[1024];
+    private int lineLength;
+
+    // Per-request latency in nanoseconds for the current batch
+    private long[] latencies = new long[1024];
+    private int batchSize;
+    private long batchNumber;
+    private long lineNumber;
+
+    ConversionDaemon(int threads) {
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "conversion-daemon-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.window = threads * 64;
+    }
+
+    void run(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+        try {
+            while (true) {
+                in.clear();
+                int read = input.read(in);
+                if (read < 0) {
+                    break;
+                }
+                long batchStart = System.nanoTime();
+                in.flip();
+                while (in.hasRemaining()) {
+                    byte b = in.get();
+                    if (b == '\n') {
+                        submitLine(output);
+                    } else {
+                        appendToLine(b);
+                    }
+                }
+                finishBatch(output, batchStart);
+            }
+            // Last line without a newline at the end
+            if (lineLength > 0) {
+                long batchStart = System.nanoTime();
+                submitLine(output);
+                finishBatch(output, batchStart);
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void appendToLine(byte b) {
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = b;
+    }
+
+    private void submitLine(WritableByteChannel output) throws IOException {
+        lineNumber++;
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+        if (isBlank(line, length)) {
+            return;
+        }
+        String text = new String(line, 0, length, StandardCharsets.UTF_8);
+        long submitted = System.nanoTime();
+        long number = lineNumber;
+        pending.add(CompletableFuture.supplyAsync(() -> respond(text, number, submitted), workers));
+        if (pending.size() >= window) {
+            // Don't let a huge batch queue up unbounded work - write out the oldest answer first
+            writeResponse(pending.poll().join(), output);
+        }
+        // Write whatever is already done at the front without waiting
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeResponse(pending.poll().join(), output);
+        }
+    }
+
+    private void finishBatch(WritableByteChannel output, long batchStart) throws IOException {
+        while (!pending.isEmpty()) {
+            writeResponse(pending.poll().join(), output);
+        }
+        flush(output);
+        if (batchSize > 0) {
+            printBatchStats(System.nanoTime() - batchStart);
+        }
+        batchSize = 0;
+    }
+
+    // Runs on a worker thread
+    private Answer respond(String text, long number, long submitted) {
+        Map<String, Object> response;
+        Object id = null;
+        try {
+            Map<String, Object> request = Json.parseObject(text);
+            id = request.get("id");
+            response = ConversionService.handleSafely(operationOf(request), request);
+        } catch (IllegalArgumentException e) {
+            response = ConversionService.errorResponse("Line " + number + ": " + e.getMessage());
+        } catch (RuntimeException | StackOverflowError e) {
+            // Anything else is still only this line's problem; letting it out would end the daemon
+            String message = e instanceof StackOverflowError ? "Request is nested too deeply" : "Internal error: " + e;
+            response = ConversionService.errorResponse("Line " + number + ": " + message);
+        }
+        if (id != null) {
+            response.put("id", id);
+        }
+        StringBuilder json = new StringBuilder(64);
+        Json.write(response, json);
+        json.append('\n');
+        return new Answer(json, System.nanoTime() - submitted);
+    }
+
+    private static String operationOf(Map<String, Object> request) {
+        Object operation = request.get("operation");
+        return operation == null ? "convert" : operation.toString();
+    }
+
+    private void writeResponse(Answer answer, WritableByteChannel output) throws IOException {
+        recordLatency(answer.nanos);
+
+        CharBuffer chars = CharBuffer.wrap(answer.json);
+        while (true) {
+            CoderResult result = encoder.encode(chars, out, true);
+            if (!result.isOverflow()) {
+                break;
+            }
+            flush(output);
+        }
+        encoder.reset();
+    }
+
+    private void flush(WritableByteChannel output) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            output.write(out);
+        }
+        out.clear();
+    }
+
+    private void recordLatency(long nanos) {
+        if (batchSize == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[batchSize++] = nanos;
+    }
+
+    private void printBatchStats(long wallNanos) {
+        batchNumber++;
+        Arrays.sort(latencies, 0, batchSize);
+        System.err.printf("batch %d: %d requests in %.2f ms (p50 %.3f ms, p99 %.3f ms, max %.3f ms)%n",
+                batchNumber, batchSize, wallNanos / 1e6,
+                percentile(0.50) / 1e6, percentile(0.99) / 1e6, latencies[batchSize - 1] / 1e6);
+    }
+
+    private long percentile(double p) {
+        int index = (int) Math.ceil(p * batchSize) - 1;
+        return latencies[Math.max(0, Math.min(batchSize - 1, index))];
+    }
+
+    private static boolean isBlank(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // One finished response line and how long it took from being read to being answered
+    private static final class Answer {
+        final CharSequence json;
+        final long nanos;
+
+        Answer(CharSequence json, long nanos) {
+            this.json = json;
+            this.nanos = nanos;
+        }
+    }
+
+    // Entry point for --daemon; stdin and stdout are used as raw channels without extra buffering layers
+    static void runOnStandardStreams(int threads) throws IOException {
+        try (FileInputStream stdin = new FileInputStream(FileDescriptor.in);
+             FileOutputStream stdout = new FileOutputStream(FileDescriptor.out)) {
+            new ConversionDaemon(threads).run(stdin.getChannel(), stdout.getChannel());
+        }
+    }
+}
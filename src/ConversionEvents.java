@@ -0,0 +1,167 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight Recorder events for every stage of the conversion pipeline
+// Start the app with -XX:StartFlightRecording=filename=conv.jfr and open the file
+// in JDK Mission Control to see where a slow conversion spent its time.
+// When no recording is running, shouldCommit() is false and the JIT removes the event entirely.
+// Creating the very first event object starts up the whole JFR machinery (a few hundred ms), so the
+// start* methods return null until Flight Recorder is actually running - callers check for null.
+final class ConversionEvents {
+
+    private ConversionEvents() {
+    }
+
+    // True once a recording has been started, from the command line or later with jcmd
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    static LexEvent startLex() {
+        if (!recording()) {
+            return null;
+        }
+        LexEvent event = new LexEvent();
+        event.begin();
+        return event;
+    }
+
+    static ValidateEvent startValidate() {
+        if (!recording()) {
+            return null;
+        }
+        ValidateEvent event = new ValidateEvent();
+        event.begin();
+        return event;
+    }
+
+    static ConvertEvent startConvert() {
+        if (!recording()) {
+            return null;
+        }
+        ConvertEvent event = new ConvertEvent();
+        event.begin();
+        return event;
+    }
+
+    static CombineEvent startCombine() {
+        if (!recording()) {
+            return null;
+        }
+        CombineEvent event = new CombineEvent();
+        event.begin();
+        return event;
+    }
+
+    @Name("stackexpconviz.Lex")
+    @Label("Lexing")
+    @Category({"StackExpConViz", "Pipeline"})
+    @Description("Turning the input text into tokens")
+    static class LexEvent extends Event {
+        @Label("Mode")
+        String mode;
+
+        @Label("Tokenizer")
+        String tokenizer;
+
+        @Label("Input Length")
+        int inputLength;
+
+        @Label("Token Count")
+        int tokenCount;
+    }
+
+    @Name("stackexpconviz.Validate")
+    @Label("Validation")
+    @Category({"StackExpConViz", "Pipeline"})
+    @Description("Checking a token array against one notation")
+    static class ValidateEvent extends Event {
+        @Label("Mode")
+        String mode;
+
+        @Label("Validator")
+        String validator;
+
+        @Label("Token Count")
+        int tokenCount;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name("stackexpconviz.Convert")
+    @Label("Conversion")
+    @Category({"StackExpConViz", "Pipeline"})
+    @Description("Converting infix tokens to prefix or postfix")
+    static class ConvertEvent extends Event {
+        @Label("Mode")
+        String mode;
+
+        @Label("Converter")
+        String converter;
+
+        @Label("Token Count")
+        int tokenCount;
+
+        @Label("Output Token Count")
+        int outputTokenCount;
+    }
+
+    @Name("stackexpconviz.Combine")
+    @Label("Operator Combine")
+    @Category({"StackExpConViz", "Visualizer"})
+    @Description("processOperator popping two operands and pushing the combined expression")
+    static class CombineEvent extends Event {
+        @Label("Mode")
+        String mode;
+
+        @Label("Operator")
+        String operator;
+
+        @Label("Token Count")
+        int tokenCount;
+
+        @Label("Stack Size")
+        int stackSize;
+
+        @Label("Result Length")
+        int resultLength;
+    }
+
+    @Name("stackexpconviz.AnimationTick")
+    @Label("Animation Tick")
+    @Category({"StackExpConViz", "Visualizer"})
+    @Description("One firing of an animation timer")
+    static class AnimationTickEvent extends Event {
+        @Label("Mode")
+        String mode;
+
+        @Label("Timer")
+        String timer;
+
+        @Label("Step")
+        int step;
+
+        @Label("Token Count")
+        int tokenCount;
+    }
+
+    // Helper so every timer records its ticks the same way
+    static void tick(String timer, int step, String mode, int tokenCount) {
+        if (!recording()) {
+            return;
+        }
+        AnimationTickEvent event = new AnimationTickEvent();
+        if (event.shouldCommit()) {
+            event.mode = mode;
+            event.timer = timer;
+            event.step = step;
+            event.tokenCount = tokenCount;
+            event.commit();
+        }
+    }
+}
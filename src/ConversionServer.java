@@ -0,0 +1,136 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Small HTTP service so other tools can use the converter without the window
+// It only listens on the loopback address. Every request runs on its own virtual thread,
+// and a semaphore caps how many are being worked on at once - anything over the cap gets
+// 429 Too Many Requests straight away instead of piling up.
+//
+//   POST /validate   {"expression": "AB+", "notation": "postfix"}
+//   POST /convert    {"expression": "A + B * C", "mode": "infix-to-postfix"}
+//   POST /evaluate   {"expression": "A + 2", "notation": "infix", "variables": {"A": 1}}
+//   POST /brackets   {"expression": "({[]})"}
+//   POST /batch      {"operation": "convert", "mode": "...", "expressions": ["...", "..."]}
+//   GET  /metrics    counters from Metrics
+//   GET  /health     {"status": "ok"}
+final class ConversionServer {
+    static final int DEFAULT_PORT = 8765;
+    // Requests bigger than this are refused with 413
+    private static final int MAX_BODY_BYTES = 4 * 1024 * 1024;
+
+    private final int port;
+    private final Semaphore admission;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    ConversionServer(int port, int maxInFlight) {
+        this.port = port;
+        this.admission = new Semaphore(maxInFlight);
+    }
+
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        for (String operation : new String[]{"validate", "convert", "evaluate", "brackets", "notations", "batch"}) {
+            server.createContext("/" + operation, exchange -> handle(exchange, operation));
+        }
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/health", exchange -> send(exchange, 200, Map.of("status", "ok")));
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, String operation) throws IOException {
+        Metrics.increment("http.requests");
+        if (!admission.tryAcquire()) {
+            // Overloaded - tell the client to back off rather than queueing without limit
+            Metrics.increment("http.rejected");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 429, ConversionService.errorResponse("Too many requests, try again later"));
+            return;
+        }
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, ConversionService.errorResponse("Use POST"));
+                return;
+            }
+            String body = readBody(exchange);
+            if (body == null) {
+                send(exchange, 413, ConversionService.errorResponse("Request body too large"));
+                return;
+            }
+
+            Map<String, Object> response;
+            try {
+                Map<String, Object> request = Json.parseObject(body);
+                response = operation.equals("batch")
+                        ? ConversionService.batch(request)
+                        : ConversionService.handle(operation, request);
+            } catch (IllegalArgumentException e) {
+                Metrics.increment("http.errors");
+                send(exchange, 400, ConversionService.errorResponse(e.getMessage()));
+                return;
+            } catch (RuntimeException | StackOverflowError e) {
+                // Still answer, or the client only sees the connection drop
+                Metrics.increment("http.errors");
+                send(exchange, 500, ConversionService.internalError(operation, e));
+                return;
+            }
+            send(exchange, 200, response);
+        } finally {
+            admission.release();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        send(exchange, 200, Metrics.snapshot());
+    }
+
+    // Returns null if the body is bigger than MAX_BODY_BYTES
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                if (out.size() + read > MAX_BODY_BYTES) {
+                    return null;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
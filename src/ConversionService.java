@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns JSON-style requests into JSON-style responses for the headless front ends
+// Every request is a map with an "operation" (validate, convert, evaluate, brackets) and its fields:
+//   validate:  expression + notation (or mode, which implies the input notation)
+//   convert:   expression + mode, e.g. "infix-to-postfix"
+//   evaluate:  expression + notation (default infix) + optional "variables": {"A": 2}
+//   brackets:  expression
+//   notations: expression + notation (or mode) -> prefix, postfix, infix and minimal infix at once
+// Bad requests throw IllegalArgumentException; the caller decides how to report it.
+final class ConversionService {
+    // Largest number of items one batch request may carry
+    static final int MAX_BATCH_SIZE = 10_000;
+
+    private ConversionService() {
+    }
+
+    static Map<String, Object> handle(String operation, Map<String, Object> request) {
+        switch (operation) {
+            case "validate":
+                return validate(request);
+            case "convert":
+                return convert(request);
+            case "evaluate":
+                return evaluate(request);
+            case "brackets":
+                return brackets(request);
+            case "notations":
+                return notations(request);
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    // Same as handle, but reads the operation from the request itself (default "convert")
+    static Map<String, Object> handle(Map<String, Object> request) {
+        Object operation = request.get("operation");
+        return handle(operation == null ? "convert" : operation.toString(), request);
+    }
+
+    // Like handle, but an error becomes an {"error": ...} response instead of an exception, so one bad
+    // item can't take the rest of a batch down with it
+    static Map<String, Object> handleSafely(String operation, Map<String, Object> request) {
+        try {
+            return handle(operation, request);
+        } catch (IllegalArgumentException e) {
+            return errorResponse(e.getMessage());
+        } catch (RuntimeException e) {
+            return internalError(operation, e);
+        }
+    }
+
+    // A bug on our side: the details go to the server's log, the client only learns that it happened
+    static Map<String, Object> internalError(String operation, Throwable e) {
+        System.err.println("Internal error in " + operation + ":");
+        e.printStackTrace();
+        return errorResponse("Internal error");
+    }
+
+    static Map<String, Object> errorResponse(String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", message);
+        return response;
+    }
+
+    static Map<String, Object> validate(Map<String, Object> request) {
+        String expression = requireString(request, "expression");
+        ExpressionEngine.Notation notation = request.containsKey("mode")
+                ? ExpressionEngine.Mode.fromName(requireString(request, "mode")).from
+                : ExpressionEngine.Notation.fromName(requireString(request, "notation"));
+
+        ExpressionLexer lexer = ExpressionLexer.lex(expression.trim(), notation);
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (notation == ExpressionEngine.Notation.INFIX) {
+            response.put("valid", ExpressionEngine.isValidInfix(lexer));
+            response.put("tokens", lexer.count());
+            return response;
+        }
+        // The same check --validate and the converters use, which also says where it goes wrong
+        ArityValidator.Result problem = ArityValidator.check(lexer, notation);
+        response.put("valid", problem.isValid());
+        response.put("tokens", lexer.count());
+        if (!problem.isValid()) {
+            response.put("problem", problem.message());
+            response.put("token", problem.token);
+            response.put("offset", problem.offset);
+        }
+        return response;
+    }
+
+    static Map<String, Object> convert(Map<String, Object> request) {
+        String expression = requireString(request, "expression");
+        ExpressionEngine.Mode mode = ExpressionEngine.Mode.fromName(requireString(request, "mode"));
+
+        ConversionEvents.ConvertEvent event = ConversionEvents.startConvert();
+        String result = ExpressionEngine.convert(expression, mode);
+        if (event != null && event.shouldCommit()) {
+            event.mode = mode.label;
+            event.converter = "ConversionService.convert";
+            // Token counts, like the visualizer records; only lexed when the event is recorded
+            event.tokenCount = ExpressionLexer.lex(expression.trim(), mode.from).count();
+            event.outputTokenCount = ExpressionLexer.lex(result, mode.to).count();
+            event.commit();
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("mode", mode.label);
+        response.put("result", result);
+        return response;
+    }
+
+    static Map<String, Object> evaluate(Map<String, Object> request) {
+        String expression = requireString(request, "expression");
+        ExpressionEngine.Notation notation = request.containsKey("notation")
+                ? ExpressionEngine.Notation.fromName(requireString(request, "notation"))
+                : ExpressionEngine.Notation.INFIX;
+
+        Map<String, Double> variables = new HashMap<>();
+        Object rawVariables = request.get("variables");
+        if (rawVariables instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) rawVariables).entrySet()) {
+                if (!(entry.getValue() instanceof Number)) {
+                    throw new IllegalArgumentException("Variable '" + entry.getKey() + "' must be a number");
+                }
+                variables.put(entry.getKey().toString(), ((Number) entry.getValue()).doubleValue());
+            }
+        } else if (rawVariables != null) {
+            throw new IllegalArgumentException("'variables' must be an object");
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("value", ExpressionEngine.evaluate(expression, notation, variables));
+        return response;
+    }
+
+    static Map<String, Object> notations(Map<String, Object> request) {
+        String expression = requireString(request, "expression");
+        ExpressionEngine.Notation notation = request.containsKey("mode")
+                ? ExpressionEngine.Mode.fromName(requireString(request, "mode")).from
+                : ExpressionEngine.Notation.fromName(requireString(request, "notation"));
+
+        AllNotations all = AllNotations.of(expression, notation);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("prefix", all.prefix);
+        response.put("postfix", all.postfix);
+        response.put("infix", all.infix);
+        response.put("minimalInfix", all.minimalInfix);
+        return response;
+    }
+
+    static Map<String, Object> brackets(Map<String, Object> request) {
+        BracketChecker.Result result = BracketChecker.check(requireString(request, "expression"));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("balanced", result.isBalanced());
+        response.put("verdict", result.verdict.name());
+        response.put("offset", result.offset);
+        response.put("message", result.message());
+        return response;
+    }
+
+    // A batch is either {"operation": ..., "mode"/"notation": ..., "expressions": [...]}
+    // or {"requests": [{...}, {...}]}; each item gets its own result or error, in order
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> batch(Map<String, Object> request) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        Object requests = request.get("requests");
+        Object expressions = request.get("expressions");
+        if (requests instanceof List) {
+            for (Object item : (List<Object>) requests) {
+                if (!(item instanceof Map)) {
+                    throw new IllegalArgumentException("Every entry in 'requests' must be an object");
+                }
+                items.add((Map<String, Object>) item);
+            }
+        } else if (expressions instanceof List) {
+            // Same settings for every expression
+            for (Object expression : (List<Object>) expressions) {
+                Map<String, Object> item = new LinkedHashMap<>(request);
+                item.remove("expressions");
+                item.put("expression", expression);
+                items.add(item);
+            }
+        } else {
+            throw new IllegalArgumentException("A batch needs a 'requests' or an 'expressions' array");
+        }
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch too large: " + items.size() + " items (max " + MAX_BATCH_SIZE + ")");
+        }
+
+        List<Object> results = new ArrayList<>(items.size());
+        for (Map<String, Object> item : items) {
+            Object operation = item.get("operation");
+            results.add(handleSafely(operation == null ? "convert" : operation.toString(), item));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("results", results);
+        return response;
+    }
+
+    private static String requireString(Map<String, Object> request, String field) {
+        Object value = request.get(field);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Missing string field '" + field + "'");
+        }
+        return (String) value;
+    }
+}
@@ -0,0 +1,107 @@
+import java.awt.EventQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+// Watches the event dispatch thread and reports when it stops responding
+// A background thread keeps posting a tiny probe to the EDT and measures how long it takes to run.
+// If a probe is still waiting after the threshold, the EDT is stuck, so we grab its stack trace
+// (which shows exactly what is blocking it) and log it together with the current mode and input size.
+final class EdtWatchdog {
+    private final long thresholdNanos;
+    private final long probeIntervalMillis;
+    // Describes what the user was doing - must not touch Swing components, the EDT may be holding their locks
+    private final Supplier<String> context;
+    // Called with the stall length in ms once the EDT recovers
+    private final LongConsumer onStallEnded;
+
+    private volatile Thread edt;
+    private volatile boolean running;
+    private Thread watcher;
+
+    EdtWatchdog(long thresholdMillis, long probeIntervalMillis, Supplier<String> context, LongConsumer onStallEnded) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.probeIntervalMillis = probeIntervalMillis;
+        this.context = context;
+        this.onStallEnded = onStallEnded;
+    }
+
+    void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        watcher = new Thread(this::watchLoop, "EDT-Watchdog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    void stop() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    private void watchLoop() {
+        while (running) {
+            long postedAt = System.nanoTime();
+            long[] answeredAt = new long[1];
+            CountDownLatch answered = new CountDownLatch(1);
+            EventQueue.invokeLater(() -> {
+                edt = Thread.currentThread();
+                answeredAt[0] = System.nanoTime();
+                answered.countDown();
+            });
+
+            boolean stalled = false;
+            try {
+                if (!answered.await(thresholdNanos, TimeUnit.NANOSECONDS)) {
+                    // Still no answer - capture the EDT while it is stuck, then wait for it to recover
+                    stalled = true;
+                    reportStall(System.nanoTime() - postedAt);
+                    answered.await();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // The latch makes answeredAt[0] visible here
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(answeredAt[0] - postedAt);
+            Metrics.increment("edt.probes");
+            Metrics.recordMax("edt.latency.max.ms", latencyMillis);
+            if (stalled) {
+                Metrics.recordMax("edt.stall.max.ms", latencyMillis);
+                System.err.println("EDT stall ended after " + latencyMillis + " ms");
+                if (onStallEnded != null) {
+                    onStallEnded.accept(latencyMillis);
+                }
+            }
+
+            try {
+                Thread.sleep(probeIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void reportStall(long waitedNanos) {
+        Metrics.increment("edt.stalls");
+
+        StringBuilder report = new StringBuilder();
+        report.append("EDT stall: blocked for ").append(TimeUnit.NANOSECONDS.toMillis(waitedNanos)).append(" ms");
+        report.append(" (").append(context.get()).append(")");
+
+        Thread dispatchThread = edt;
+        if (dispatchThread == null) {
+            report.append("\n\t<EDT has not answered a probe yet, no stack available>");
+        } else {
+            for (StackTraceElement element : dispatchThread.getStackTrace()) {
+                report.append("\n\tat ").append(element);
+            }
+        }
+        System.err.println(report);
+    }
+}
@@ -0,0 +1,411 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Stack;
+
+// The conversion logic without any Swing in it
+// The visualizer uses this for tokenizing, validating and the infix conversions, and the
+// headless tools (the HTTP service and friends) use it for everything, so both always agree.
+// Which characters are operators or brackets, and how operators bind, comes from OperatorRegistry.
+final class ExpressionEngine {
+
+    enum Notation {
+        PREFIX,
+        INFIX,
+        POSTFIX;
+
+        static Notation fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown notation: " + name);
+            }
+        }
+    }
+
+    // The six conversions, in the same order as the visualizer's mode list
+    enum Mode {
+        PREFIX_TO_POSTFIX("Prefix to Postfix", Notation.PREFIX, Notation.POSTFIX),
+        PREFIX_TO_INFIX("Prefix to Infix", Notation.PREFIX, Notation.INFIX),
+        POSTFIX_TO_PREFIX("Postfix to Prefix", Notation.POSTFIX, Notation.PREFIX),
+        POSTFIX_TO_INFIX("Postfix to Infix", Notation.POSTFIX, Notation.INFIX),
+        INFIX_TO_POSTFIX("Infix to Postfix", Notation.INFIX, Notation.POSTFIX),
+        INFIX_TO_PREFIX("Infix to Prefix", Notation.INFIX, Notation.PREFIX);
+
+        final String label;
+        final Notation from;
+        final Notation to;
+
+        Mode(String label, Notation from, Notation to) {
+            this.label = label;
+            this.from = from;
+            this.to = to;
+        }
+
+        // Accepts "prefix-to-postfix", "PREFIX_TO_POSTFIX" or the label "Prefix to Postfix"
+        static Mode fromName(String name) {
+            String key = name.trim().toUpperCase(Locale.ROOT).replace('-', '_').replace(' ', '_');
+            try {
+                return valueOf(key);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown mode: " + name);
+            }
+        }
+    }
+
+    private ExpressionEngine() {
+    }
+
+    static boolean isOperator(String token) {
+        return OperatorRegistry.isOperator(token);
+    }
+
+    static boolean isOpenBracket(String token) {
+        return token.length() == 1 && OperatorRegistry.isOpenBracket(token.charAt(0));
+    }
+
+    static boolean isCloseBracket(String token) {
+        return token.length() == 1 && OperatorRegistry.isCloseBracket(token.charAt(0));
+    }
+
+    static boolean isBracket(String token) {
+        return token.length() == 1 && OperatorRegistry.isBracket(token.charAt(0));
+    }
+
+    // Should the operator on top of the shunting-yard stack be output before pushing incoming?
+    // Equal precedence pops for left-associative operators only, so A ^ B ^ C keeps ^ on the stack.
+    static boolean popsBefore(String top, String incoming) {
+        return popsBefore(top.charAt(0), incoming.charAt(0));
+    }
+
+    static boolean popsBefore(char top, char incoming) {
+        int topPrecedence = OperatorRegistry.precedence(top);
+        int inPrecedence = OperatorRegistry.precedence(incoming);
+        return topPrecedence > inPrecedence
+                || (topPrecedence == inPrecedence && !OperatorRegistry.isRightAssociative(incoming));
+    }
+
+    static String[] tokenize(String input, Notation notation) {
+        return notation == Notation.INFIX ? tokenizeInfix(input) : tokenizePrefixPostfix(input);
+    }
+
+    // Prefix and postfix tokens: brackets are dropped, then we split on spaces if there are any,
+    // otherwise every character is its own token (for inputs like "+AB" or "AB+")
+    static String[] tokenizePrefixPostfix(String input) {
+        return ExpressionLexer.lexPrefixPostfix(input).toStrings();
+    }
+
+    // Infix tokens: operators and brackets are always their own token, operands can be several characters
+    static String[] tokenizeInfix(String input) {
+        return ExpressionLexer.lexInfix(input).toStrings();
+    }
+
+    static boolean isValid(String[] tokens, Notation notation) {
+        switch (notation) {
+            case INFIX:
+                return isValidInfix(tokens);
+            case POSTFIX:
+                return isValidPostfix(tokens);
+            default:
+                return isValidPrefix(tokens);
+        }
+    }
+
+    static boolean isValidInfix(String[] tokens) {
+        return tokens != null && isValidInfix(ExpressionLexer.ofTokens(tokens));
+    }
+
+    static boolean isValidInfix(ExpressionLexer tokens) {
+        int count = tokens.count();
+        if (count == 0) {
+            return false;
+        }
+
+        // First, check if all brackets are balanced and matched
+        char[] bracketStack = new char[count];
+        int depth = 0;
+        for (int t = 0; t < count; t++) {
+            char symbol = tokens.symbol(t);
+            if (OperatorRegistry.isOpenBracket(symbol)) {
+                bracketStack[depth++] = symbol;
+            } else if (OperatorRegistry.isCloseBracket(symbol)) {
+                if (depth == 0 || bracketStack[--depth] != OperatorRegistry.partner(symbol)) {
+                    return false;
+                }
+            }
+        }
+        if (depth != 0) {
+            return false;
+        }
+
+        // Now check for proper operator-operand sequence
+        boolean expectingOperand = true;
+        int openBrackets = 0;
+
+        for (int t = 0; t < count; t++) {
+            char symbol = tokens.symbol(t);
+            if (OperatorRegistry.isBracket(symbol)) {
+                // A bracket group stands where an operand would, so "A (B)" and "(A +)" / "()" are wrong
+                if (OperatorRegistry.isOpenBracket(symbol)) {
+                    if (!expectingOperand) {
+                        return false;
+                    }
+                    openBrackets++;
+                } else {
+                    if (expectingOperand) {
+                        return false;
+                    }
+                    openBrackets--;
+                }
+            } else if (OperatorRegistry.isOperator(symbol)) {
+                if (expectingOperand) {
+                    return false;
+                }
+                expectingOperand = true;
+            } else {
+                if (!expectingOperand) {
+                    return false;
+                }
+                expectingOperand = false;
+            }
+        }
+
+        // The expression should end with an operand or closing bracket
+        return !expectingOperand && openBrackets == 0;
+    }
+
+    static boolean isValidPostfix(String[] tokens) {
+        if (tokens == null || tokens.length == 0) {
+            return false;
+        }
+
+        // Special case: simple expressions like "AB+" (two operands, one operator)
+        if (tokens.length == 3 && !isOperator(tokens[0]) && !isOperator(tokens[1]) && isOperator(tokens[2])) {
+            return true;
+        }
+
+        // Simulate evaluating: every operator needs its operands on the stack and leaves one result.
+        // Only the stack depth matters, and ending at exactly 1 also means the operand count is right.
+        int depth = 0;
+        for (String token : tokens) {
+            int arity = OperatorRegistry.arity(token);
+            if (arity > 0) {
+                if (depth < arity) {
+                    return false;
+                }
+                depth -= arity - 1;
+            } else {
+                depth++;
+            }
+        }
+        return depth == 1;
+    }
+
+    static boolean isValidPrefix(String[] tokens) {
+        if (tokens == null || tokens.length == 0) {
+            return false;
+        }
+
+        // Special case: unary operator (e.g., "-A")
+        if (tokens.length == 2 && isOperator(tokens[0]) && !isOperator(tokens[1])) {
+            return true;
+        }
+
+        // Special case: one operator and two operands (e.g., "+AB")
+        if (tokens.length == 3 && isOperator(tokens[0]) && !isOperator(tokens[1]) && !isOperator(tokens[2])) {
+            return true;
+        }
+
+        // Walk right to left; the running count of results must never drop below 1
+        // (ending at exactly 1 also means there is the right number of operands)
+        int count = 0;
+        for (int i = tokens.length - 1; i >= 0; i--) {
+            int arity = OperatorRegistry.arity(tokens[i]);
+            if (arity > 0) {
+                count -= arity - 1;
+            } else {
+                count++;
+            }
+            if (count < 1 && i > 0) {
+                return false;
+            }
+        }
+        return count == 1;
+    }
+
+    static String[] infixToPostfix(String[] infixTokens) {
+        ArrayList<String> postfix = new ArrayList<>();
+        Stack<String> stack = new Stack<>();
+
+        for (String token : infixTokens) {
+            if (isOperator(token)) {
+                while (!stack.isEmpty() && !isOpenBracket(stack.peek()) && popsBefore(stack.peek(), token)) {
+                    postfix.add(stack.pop());
+                }
+                stack.push(token);
+            } else if (isOpenBracket(token)) {
+                stack.push(token);
+            } else if (isCloseBracket(token)) {
+                while (!stack.isEmpty() && !isOpenBracket(stack.peek())) {
+                    postfix.add(stack.pop());
+                }
+                if (!stack.isEmpty() && isOpenBracket(stack.peek())) {
+                    stack.pop(); // Discard the open bracket
+                }
+            } else {
+                postfix.add(token);
+            }
+        }
+
+        // Pop any remaining operators, dropping unclosed brackets
+        while (!stack.isEmpty()) {
+            String top = stack.pop();
+            if (!isOpenBracket(top)) {
+                postfix.add(top);
+            }
+        }
+        return postfix.toArray(new String[0]);
+    }
+
+    // Straight to prefix, token by token, so operands of any length stay whole; {"Error"} for invalid input
+    static String[] infixToPrefix(String[] infixTokens) {
+        int[] order;
+        try {
+            order = ReverseShuntingYard.prefixOrder(ExpressionLexer.ofTokens(infixTokens));
+        } catch (IllegalArgumentException e) {
+            return new String[]{"Error"};
+        }
+        String[] prefix = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            prefix[i] = infixTokens[order[i]];
+        }
+        return prefix;
+    }
+
+    // Run a whole conversion and return the text the visualizer would show as the final result
+    // Throws IllegalArgumentException for invalid input, with the same messages as the visualizer.
+    static String convert(String input, Mode mode) {
+        StringBuilder out = new StringBuilder(input.length() + 16);
+        try {
+            convert(input, mode, OutputSink.of(out));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder doesn't throw
+        }
+        return out.toString();
+    }
+
+    // Like convert, but the result is streamed into out (e.g. a ChannelSink) instead of returned
+    static void convert(CharSequence text, Mode mode, OutputSink out) throws IOException {
+        // Leading/trailing spaces would otherwise decide how "+AB" is split
+        CharSequence input = trim(text);
+        if (input.length() == 0) {
+            throw new IllegalArgumentException("Please enter an expression!");
+        }
+        if (mode.from == Notation.INFIX) {
+            writeFromInfix(ExpressionLexer.lexInfix(input), mode.to, out);
+            return;
+        }
+        ExpressionLexer tokens = ExpressionLexer.lexPrefixPostfix(input);
+        if (tokens.count() < 2) {
+            throw new IllegalArgumentException("Expression must have at least one operator and one operand!");
+        }
+        if (mode.to == Notation.INFIX) {
+            // Same result as the visualizer's stack walk, without building every partial string.
+            // Building the tree fails ("Invalid Expression!") exactly when the validator would.
+            CompactExpression tree = CompactExpression.fromLexer(tokens, mode.from);
+            if (ParallelTreeWriter.worthIt(tree.size())) {
+                char[] written = ParallelTreeWriter.write(tree, mode.to);
+                out.append(CharBuffer.wrap(written), 0, written.length);
+            } else {
+                tree.write(mode.to, out);
+            }
+        } else {
+            PrefixPostfixTransducer.convert(tokens, mode.from, out);
+        }
+    }
+
+    // Both infix conversions validate as they go and throw "Invalid Infix Expression!"
+    private static void writeFromInfix(ExpressionLexer tokens, Notation target, OutputSink out) throws IOException {
+        if (target == Notation.POSTFIX) {
+            StreamingShuntingYard.convert(tokens, out);
+        } else {
+            ReverseShuntingYard.convert(tokens, out);
+        }
+    }
+
+    // String.trim() for any CharSequence (a view for CharBuffers, so nothing is copied)
+    private static CharSequence trim(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return start == 0 && end == text.length() ? text : text.subSequence(start, end);
+    }
+
+    // Evaluate an expression; operands are numbers or names looked up in variables
+    static double evaluate(String input, Notation notation, Map<String, Double> variables) {
+        ExpressionLexer tokens = ExpressionLexer.lex(input.trim(), notation);
+        if (notation != Notation.INFIX) {
+            return evaluateTokens(tokens, notation, variables);
+        }
+        if (!isValidInfix(tokens)) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+        return CompactExpression.fromLexer(tokens, notation).evaluate(variables);
+    }
+
+    // Prefix and postfix need no tree: a stack of doubles over the tokens (right to left for prefix),
+    // with the numbers the lexer already parsed and every distinct name looked up once
+    private static double evaluateTokens(ExpressionLexer tokens, Notation notation, Map<String, Double> variables) {
+        if (!ArityValidator.check(tokens, notation).isValid()) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+        int count = tokens.count();
+        // Names are looked up in the order they appear, like the tree does, so an error names the same one
+        double[] operands = tokens.values().clone();
+        SymbolTable names = new SymbolTable();
+        double[] nameValues = new double[16];
+        int resolved = 0;
+        for (int t = 0; t < count; t++) {
+            if (!Double.isNaN(operands[t]) || tokens.isOperator(t)) {
+                continue;
+            }
+            // Ids are handed out in order, so a name we haven't looked up yet gets the next one
+            int id = names.id(tokens.input(), tokens.start(t), tokens.end(t));
+            if (id == resolved) {
+                if (id == nameValues.length) {
+                    nameValues = Arrays.copyOf(nameValues, id * 2);
+                }
+                nameValues[resolved++] = CompactExpression.operandValue(names.get(id), variables);
+            }
+            operands[t] = nameValues[id];
+        }
+
+        boolean postfix = notation == Notation.POSTFIX;
+        double[] stack = new double[count];
+        int top = 0;
+        for (int k = 0; k < count; k++) {
+            int t = postfix ? k : count - 1 - k;
+            if (!tokens.isOperator(t)) {
+                stack[top++] = operands[t];
+                continue;
+            }
+            double popped = stack[--top];
+            double under = stack[--top];
+            char operator = tokens.symbol(t);
+            // Postfix pops the right operand first; prefix, read backwards, the left one
+            stack[top++] = postfix
+                    ? OperatorRegistry.apply(operator, under, popped)
+                    : OperatorRegistry.apply(operator, popped, under);
+        }
+        return stack[0];
+    }
+}
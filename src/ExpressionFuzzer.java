@@ -0,0 +1,556 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Random expressions for stress testing every conversion path, plus a throughput report
+// Each valid case starts as a random tree that we render in all three notations ourselves, so we
+// know the right answer for every mode without trusting the engine. For each case we check:
+//   - the rendering validates in its own notation
+//   - all six conversions give exactly the expected text
+//   - round trips (e.g. infix -> postfix -> infix) come back to where they started
+//   - prefix, infix and postfix evaluate to the same number
+//   - the parallel builder, writer, arity check and bracket check, run with tiny chunks so even short
+//     inputs are split, agree with their sequential versions
+// After that all the cases of a notation are joined into long inputs, which the 64-chars-at-a-time
+// lexer has to split exactly like the char-by-char one.
+// Invalid cases are valid ones with a token dropped, duplicated or swapped, or a bracket broken.
+// They must either be rejected with IllegalArgumentException or convert to something that is
+// itself valid - anything else (a crash, or garbage output) counts as a failure.
+//
+//   java -cp out StackExpConViz --fuzz --count 20000 --seed 7 --depth 8 --size 30 --alphabet ABCxyz19 --brackets 0.3 --invalid 0.25
+final class ExpressionFuzzer {
+    // How many failures are printed before we only count them
+    private static final int MAX_REPORTED_FAILURES = 20;
+
+    // Settings; the defaults are what --fuzz uses without options
+    long seed = 1;
+    int count = 10_000;
+    // Most nested levels of operators
+    int maxDepth = 6;
+    // Most operators in one expression
+    int maxSize = 24;
+    // Operands are single characters picked from here (digits become numbers when evaluating)
+    String alphabet = "ABCDEFxyz123";
+    // Chance that an infix subexpression gets brackets it doesn't need
+    double bracketDensity = 0.2;
+    // Share of cases that are deliberately broken
+    double invalidRate = 0.2;
+
+    private Random random;
+    private int failures;
+    private int validCases;
+    private int invalidCases;
+    private int rejectedInvalid;
+
+    // One node of the random expression tree; operator is 0 for operands
+    private static final class Node {
+        final char operator;
+        final String operand;
+        final Node left;
+        final Node right;
+
+        Node(String operand) {
+            this.operator = 0;
+            this.operand = operand;
+            this.left = null;
+            this.right = null;
+        }
+
+        Node(char operator, Node left, Node right) {
+            this.operator = operator;
+            this.operand = null;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    // One generated expression in every notation
+    private static final class Case {
+        final Node tree;
+        final String prefix;
+        final String postfix;
+        final String infix;
+
+        Case(Node tree, String prefix, String postfix, String infix) {
+            this.tree = tree;
+            this.prefix = prefix;
+            this.postfix = postfix;
+            this.infix = infix;
+        }
+
+        String in(ExpressionEngine.Notation notation) {
+            switch (notation) {
+                case PREFIX:
+                    return prefix;
+                case POSTFIX:
+                    return postfix;
+                default:
+                    return infix;
+            }
+        }
+    }
+
+    // Runs the checks and the benchmark; returns the number of failures
+    int run() {
+        random = new Random(seed);
+        List<Case> valid = new ArrayList<>();
+        List<String[]> invalid = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            Case c = generate();
+            if (random.nextDouble() < invalidRate) {
+                ExpressionEngine.Notation notation = ExpressionEngine.Notation.values()[random.nextInt(3)];
+                invalid.add(new String[]{notation.name(), mutate(c.in(notation), notation)});
+            } else {
+                valid.add(c);
+            }
+        }
+
+        for (Case c : valid) {
+            checkValid(c);
+        }
+        for (String[] broken : invalid) {
+            checkInvalid(ExpressionEngine.Notation.valueOf(broken[0]), broken[1]);
+        }
+        checkBulkLexer(valid, invalid);
+
+        System.out.printf("Checked %d valid and %d invalid expressions (seed %d): %d failures, %d of the invalid ones rejected%n",
+                validCases, invalidCases, seed, failures, rejectedInvalid);
+        benchmark(valid);
+        return failures;
+    }
+
+    private Case generate() {
+        Node tree = randomTree(0, 1 + random.nextInt(maxSize));
+        boolean spaced = random.nextBoolean();
+        String separator = spaced ? " " : "";
+        StringBuilder prefix = new StringBuilder();
+        StringBuilder postfix = new StringBuilder();
+        StringBuilder infix = new StringBuilder();
+        writePrefix(tree, prefix, separator);
+        writePostfix(tree, postfix, separator);
+        writeInfix(tree, infix, spaced);
+        return new Case(tree, prefix.toString().trim(), postfix.toString().trim(), infix.toString().trim());
+    }
+
+    private Node randomTree(int depth, int operators) {
+        if (operators == 0 || depth == maxDepth) {
+            return new Node(String.valueOf(alphabet.charAt(random.nextInt(alphabet.length()))));
+        }
+        String symbols = OperatorRegistry.symbols();
+        char operator = symbols.charAt(random.nextInt(symbols.length()));
+        int leftOperators = random.nextInt(operators);
+        return new Node(operator,
+                randomTree(depth + 1, leftOperators),
+                randomTree(depth + 1, operators - 1 - leftOperators));
+    }
+
+    private static void writePrefix(Node node, StringBuilder out, String separator) {
+        if (node.operator == 0) {
+            out.append(node.operand).append(separator);
+            return;
+        }
+        out.append(node.operator).append(separator);
+        writePrefix(node.left, out, separator);
+        writePrefix(node.right, out, separator);
+    }
+
+    private static void writePostfix(Node node, StringBuilder out, String separator) {
+        if (node.operator == 0) {
+            out.append(node.operand).append(separator);
+            return;
+        }
+        writePostfix(node.left, out, separator);
+        writePostfix(node.right, out, separator);
+        out.append(node.operator).append(separator);
+    }
+
+    // Only the brackets precedence and associativity need, plus some random extra ones
+    private void writeInfix(Node node, StringBuilder out, boolean spaced) {
+        if (node.operator == 0) {
+            out.append(node.operand);
+            return;
+        }
+        writeInfixChild(node.left, node.operator, false, out, spaced);
+        out.append(spaced ? " " + node.operator + " " : String.valueOf(node.operator));
+        writeInfixChild(node.right, node.operator, true, out, spaced);
+    }
+
+    private void writeInfixChild(Node child, char parent, boolean isRight, StringBuilder out, boolean spaced) {
+        boolean needed = false;
+        if (child.operator != 0) {
+            int childPrecedence = OperatorRegistry.precedence(child.operator);
+            int parentPrecedence = OperatorRegistry.precedence(parent);
+            boolean rightAssociative = OperatorRegistry.isRightAssociative(parent);
+            needed = childPrecedence < parentPrecedence
+                    || (childPrecedence == parentPrecedence && isRight != rightAssociative);
+        }
+        if (!needed && random.nextDouble() >= bracketDensity) {
+            writeInfix(child, out, spaced);
+            return;
+        }
+        String pair = "()[]{}";
+        int kind = random.nextInt(3) * 2;
+        out.append(pair.charAt(kind));
+        writeInfix(child, out, spaced);
+        out.append(pair.charAt(kind + 1));
+    }
+
+    // Fully bracketed infix, the way the converters write it
+    private static void writeCanonicalInfix(Node node, StringBuilder out) {
+        if (node.operator == 0) {
+            out.append(node.operand);
+            return;
+        }
+        out.append('(');
+        writeCanonicalInfix(node.left, out);
+        out.append(' ').append(node.operator).append(' ');
+        writeCanonicalInfix(node.right, out);
+        out.append(')');
+    }
+
+    private String expected(Node tree, ExpressionEngine.Notation notation) {
+        StringBuilder out = new StringBuilder();
+        switch (notation) {
+            case PREFIX:
+                writePrefix(tree, out, " ");
+                break;
+            case POSTFIX:
+                writePostfix(tree, out, " ");
+                break;
+            default:
+                writeCanonicalInfix(tree, out);
+        }
+        return out.toString().trim();
+    }
+
+    private void checkValid(Case c) {
+        validCases++;
+        if (c.tree.operator == 0) {
+            // A lone operand isn't a convertible expression
+            return;
+        }
+        for (ExpressionEngine.Notation notation : ExpressionEngine.Notation.values()) {
+            String text = c.in(notation);
+            if (!ExpressionEngine.isValid(ExpressionEngine.tokenize(text, notation), notation)) {
+                fail("rejected valid " + notation + " input", text);
+            }
+        }
+
+        for (ExpressionEngine.Mode mode : ExpressionEngine.Mode.values()) {
+            String input = c.in(mode.from);
+            String want = expected(c.tree, mode.to);
+            String got;
+            try {
+                got = ExpressionEngine.convert(input, mode);
+            } catch (RuntimeException e) {
+                fail(mode.label + " threw " + e, input);
+                continue;
+            }
+            if (!got.equals(want)) {
+                fail(mode.label + " gave '" + got + "', expected '" + want + "'", input);
+                continue;
+            }
+            // And back again
+            ExpressionEngine.Mode back = inverse(mode);
+            String wantBack = expected(c.tree, mode.from);
+            try {
+                String roundTrip = ExpressionEngine.convert(got, back);
+                if (!roundTrip.equals(wantBack)) {
+                    fail(mode.label + " then " + back.label + " gave '" + roundTrip + "', expected '" + wantBack + "'", input);
+                }
+            } catch (RuntimeException e) {
+                fail(mode.label + " then " + back.label + " threw " + e, input);
+            }
+        }
+
+        Map<String, Double> variables = randomVariables();
+        try {
+            double prefixValue = ExpressionEngine.evaluate(c.prefix, ExpressionEngine.Notation.PREFIX, variables);
+            double postfixValue = ExpressionEngine.evaluate(c.postfix, ExpressionEngine.Notation.POSTFIX, variables);
+            double infixValue = ExpressionEngine.evaluate(c.infix, ExpressionEngine.Notation.INFIX, variables);
+            if (Double.compare(prefixValue, postfixValue) != 0 || Double.compare(prefixValue, infixValue) != 0) {
+                fail("evaluations disagree: prefix " + prefixValue + ", postfix " + postfixValue + ", infix " + infixValue, c.infix);
+            }
+        } catch (IllegalArgumentException e) {
+            // Custom operators without a function can't be evaluated; that's fine
+            if (!e.getMessage().contains("can't be evaluated")) {
+                fail("evaluate threw " + e, c.infix);
+            }
+        } catch (RuntimeException e) {
+            fail("evaluate threw " + e, c.infix);
+        }
+
+        checkParallel(c);
+    }
+
+    // The parallel paths only kick in for huge inputs; a chunk of a few tokens makes every case cross
+    // chunk boundaries. The sizes come from the case number so the random stream isn't disturbed.
+    private void checkParallel(Case c) {
+        int chunkSize = 1 + validCases % 7;
+        try {
+            ExpressionLexer tokens = ExpressionLexer.lex(c.postfix, ExpressionEngine.Notation.POSTFIX);
+            CompactExpression sequential = CompactExpression.fromPostfix(tokens);
+            CompactExpression parallel = ParallelPostfixBuilder.build(tokens, chunkSize);
+            if (!sameTree(sequential, parallel)) {
+                fail("parallel postfix build (chunks of " + chunkSize + ") differs from fromPostfix", c.postfix);
+            }
+            for (ExpressionEngine.Notation notation : ExpressionEngine.Notation.values()) {
+                String want = sequential.render(notation);
+                String got = new String(ParallelTreeWriter.write(sequential, notation, chunkSize));
+                if (!got.equals(want)) {
+                    fail("parallel " + notation + " writer (grain " + chunkSize + ") gave '" + got + "', expected '" + want + "'", c.postfix);
+                }
+            }
+        } catch (RuntimeException e) {
+            fail("parallel build or write threw " + e, c.postfix);
+        }
+        checkParallelValidators(ExpressionEngine.Notation.PREFIX, c.prefix);
+        checkParallelValidators(ExpressionEngine.Notation.POSTFIX, c.postfix);
+        checkParallelValidators(ExpressionEngine.Notation.INFIX, c.infix);
+    }
+
+    // The verdicts have to match on broken input as well, down to the offset
+    private void checkParallelValidators(ExpressionEngine.Notation notation, String input) {
+        int chunkSize = 1 + (validCases + invalidCases) % 7;
+        try {
+            if (notation == ExpressionEngine.Notation.INFIX) {
+                String want = BracketChecker.check(input).toString();
+                String got = BracketChecker.checkParallel(input, chunkSize).toString();
+                if (!got.equals(want)) {
+                    fail("parallel bracket check (chunks of " + chunkSize + ") said '" + got + "', expected '" + want + "'", input);
+                }
+                return;
+            }
+            ExpressionLexer tokens = ExpressionLexer.lex(input, notation);
+            String want = ArityValidator.checkSequential(tokens, notation).toString();
+            String got = ArityValidator.checkParallel(tokens, notation).toString();
+            if (!got.equals(want)) {
+                fail("parallel " + notation + " arity check said '" + got + "', expected '" + want + "'", input);
+            }
+        } catch (RuntimeException e) {
+            fail("parallel " + notation + " check threw " + e, input);
+        }
+    }
+
+    // Short cases never reach the bulk lexer, so they're joined with assorted whitespace (or nothing)
+    // until they are long enough. Prefix/postfix also get an input without a single space, which is
+    // split into characters.
+    private void checkBulkLexer(List<Case> valid, List<String[]> invalid) {
+        String[] separators = {" ", "\n", "\t", "", "  "};
+        for (ExpressionEngine.Notation notation : ExpressionEngine.Notation.values()) {
+            List<String> texts = new ArrayList<>();
+            for (Case c : valid) {
+                texts.add(c.in(notation));
+            }
+            for (String[] broken : invalid) {
+                if (broken[0].equals(notation.name())) {
+                    texts.add(broken[1]);
+                }
+            }
+            StringBuilder joined = new StringBuilder();
+            StringBuilder unspaced = new StringBuilder();
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i);
+                joined.append(text).append(separators[i % separators.length]);
+                if (text.indexOf(' ') < 0) {
+                    unspaced.append(text).append('\n');
+                }
+                if (joined.length() >= 1 << 16) {
+                    compareLexers(joined, notation);
+                    joined.setLength(0);
+                }
+            }
+            compareLexers(joined, notation);
+            if (notation != ExpressionEngine.Notation.INFIX) {
+                compareLexers(unspaced, notation);
+            }
+        }
+    }
+
+    private void compareLexers(CharSequence input, ExpressionEngine.Notation notation) {
+        if (input.length() < ExpressionLexer.BULK_THRESHOLD) {
+            return;
+        }
+        boolean infix = notation == ExpressionEngine.Notation.INFIX;
+        ExpressionLexer bulk = infix ? ExpressionLexer.lexInfix(input, true) : ExpressionLexer.lexPrefixPostfix(input, true);
+        ExpressionLexer scalar = infix ? ExpressionLexer.lexInfix(input, false) : ExpressionLexer.lexPrefixPostfix(input, false);
+        for (int t = 0; t < Math.min(bulk.count(), scalar.count()); t++) {
+            if (bulk.start(t) != scalar.start(t) || bulk.end(t) != scalar.end(t)) {
+                int from = Math.max(0, Math.min(bulk.start(t), scalar.start(t)) - 20);
+                fail("bulk " + notation + " lexer gave token " + t + " as [" + bulk.start(t) + ", " + bulk.end(t)
+                        + "), expected [" + scalar.start(t) + ", " + scalar.end(t) + ")",
+                        input.subSequence(from, Math.min(input.length(), from + 60)).toString());
+                return;
+            }
+        }
+        if (bulk.count() != scalar.count()) {
+            fail("bulk " + notation + " lexer found " + bulk.count() + " tokens, expected " + scalar.count(),
+                    input.length() + " chars");
+        }
+    }
+
+    private static boolean sameTree(CompactExpression a, CompactExpression b) {
+        if (a.size() != b.size() || a.root() != b.root()) {
+            return false;
+        }
+        for (int node = 0; node < a.size(); node++) {
+            if (a.isOperator(node) != b.isOperator(node)) {
+                return false;
+            }
+            boolean same = a.isOperator(node)
+                    ? a.operator(node) == b.operator(node) && a.left(node) == b.left(node) && a.right(node) == b.right(node)
+                    : a.symbol(node).equals(b.symbol(node));
+            if (!same) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkInvalid(ExpressionEngine.Notation notation, String input) {
+        invalidCases++;
+        checkParallelValidators(notation, input);
+        for (ExpressionEngine.Mode mode : ExpressionEngine.Mode.values()) {
+            if (mode.from != notation) {
+                continue;
+            }
+            String got;
+            try {
+                got = ExpressionEngine.convert(input, mode);
+            } catch (IllegalArgumentException e) {
+                rejectedInvalid++;
+                return;
+            } catch (RuntimeException | StackOverflowError e) {
+                fail(mode.label + " crashed with " + e, input);
+                return;
+            }
+            // The mutation happened to produce something acceptable - then the output must be valid too
+            if (!ExpressionEngine.isValid(ExpressionEngine.tokenize(got, mode.to), mode.to)) {
+                fail(mode.label + " accepted it and gave invalid output '" + got + "'", input);
+            }
+        }
+    }
+
+    // Break an expression in one small way
+    private String mutate(String text, ExpressionEngine.Notation notation) {
+        ArrayList<String> tokens = new ArrayList<>(List.of(ExpressionEngine.tokenize(text, notation)));
+        String symbols = OperatorRegistry.symbols();
+        int at = random.nextInt(tokens.size());
+        switch (random.nextInt(4)) {
+            case 0:
+                tokens.remove(at);
+                break;
+            case 1:
+                tokens.add(at, String.valueOf(symbols.charAt(random.nextInt(symbols.length()))));
+                break;
+            case 2:
+                if (tokens.size() > 1) {
+                    int other = at == tokens.size() - 1 ? at - 1 : at + 1;
+                    String swap = tokens.get(at);
+                    tokens.set(at, tokens.get(other));
+                    tokens.set(other, swap);
+                }
+                break;
+            default:
+                tokens.add(at, "([{)]}".substring(random.nextInt(6)).substring(0, 1));
+        }
+        return String.join(" ", tokens);
+    }
+
+    private Map<String, Double> randomVariables() {
+        Map<String, Double> variables = new HashMap<>();
+        for (int i = 0; i < alphabet.length(); i++) {
+            variables.put(String.valueOf(alphabet.charAt(i)), (double) (random.nextInt(19) - 9));
+        }
+        return variables;
+    }
+
+    private static ExpressionEngine.Mode inverse(ExpressionEngine.Mode mode) {
+        for (ExpressionEngine.Mode candidate : ExpressionEngine.Mode.values()) {
+            if (candidate.from == mode.to && candidate.to == mode.from) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("No inverse for " + mode);
+    }
+
+    private void fail(String problem, String input) {
+        failures++;
+        if (failures <= MAX_REPORTED_FAILURES) {
+            System.out.println("FAIL: " + problem + "  <- [" + input + "]");
+        } else if (failures == MAX_REPORTED_FAILURES + 1) {
+            System.out.println("(more failures not shown)");
+        }
+    }
+
+    // Times every mode over the valid cases, after one untimed pass over all of them to warm up the JIT
+    private void benchmark(List<Case> cases) {
+        if (cases.isEmpty()) {
+            return;
+        }
+        for (ExpressionEngine.Mode mode : ExpressionEngine.Mode.values()) {
+            convertAll(cases, mode);
+        }
+        System.out.println("Throughput over the same expressions:");
+        for (ExpressionEngine.Mode mode : ExpressionEngine.Mode.values()) {
+            long start = System.nanoTime();
+            long chars = convertAll(cases, mode);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("  %-18s %,12.0f expressions/s  %8.2f MB/s%n",
+                    mode.label, cases.size() / seconds, chars / seconds / 1e6);
+        }
+    }
+
+    // Returns how many characters were converted
+    private static long convertAll(List<Case> cases, ExpressionEngine.Mode mode) {
+        long chars = 0;
+        for (Case c : cases) {
+            if (c.tree.operator != 0) {
+                String input = c.in(mode.from);
+                chars += input.length();
+                ExpressionEngine.convert(input, mode);
+            }
+        }
+        return chars;
+    }
+
+    // Reads --count, --seed, --depth, --size, --alphabet, --brackets and --invalid
+    static ExpressionFuzzer fromArgs(String[] args, int first) {
+        ExpressionFuzzer fuzzer = new ExpressionFuzzer();
+        for (int i = first; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--count":
+                    fuzzer.count = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    fuzzer.seed = Long.parseLong(value);
+                    break;
+                case "--depth":
+                    fuzzer.maxDepth = Integer.parseInt(value);
+                    break;
+                case "--size":
+                    fuzzer.maxSize = Integer.parseInt(value);
+                    break;
+                case "--alphabet":
+                    fuzzer.alphabet = value;
+                    break;
+                case "--brackets":
+                    fuzzer.bracketDensity = Double.parseDouble(value);
+                    break;
+                case "--invalid":
+                    fuzzer.invalidRate = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+        return fuzzer;
+    }
+}
@@ -0,0 +1,340 @@
+import java.util.Arrays;
+
+// Splits an expression into tokens without copying it
+// Works over any CharSequence - a String, a StringBuilder, or a CharBuffer decoded straight from a
+// (mapped) file. Tokens are kept as start/end offsets into that input; nothing is copied until
+// someone asks for text(i). Bracket skipping and whitespace splitting happen in the same pass.
+// The rules are the ones the converters have always used:
+//   prefix/postfix: brackets are ignored; if there is a space anywhere, tokens are separated by
+//                   whitespace, otherwise every character is its own token ("+AB" or "AB+")
+//   infix:          operators and brackets are always their own token, everything else is split
+//                   on whitespace, so operands can be several characters long; the sign of a
+//                   number's exponent stays in the number ("2.5e-3", see NumberLiteral)
+// values() parses the number literals into a double[] next to the offsets, for evaluation.
+//
+// Big inputs are lexed 64 chars at a time: one table lookup per char gives its class, which is shifted
+// into a few masks (breaks an operand / is a token of its own / ...), and the tokens are then read off
+// the masks with bit tricks - an operand starts where a 0 bit follows a 1 and ends at the next 1. The
+// per-char work is a lookup and some shifts instead of a test per token kind; what's left to branch
+// on is whether the char is ASCII (the table's range) and then one step per token.
+final class ExpressionLexer {
+    // Inputs from this many chars on take the 64-chars-at-a-time path
+    static final int BULK_THRESHOLD = 1 << 12;
+    // Bits of the char class tables for the bulk path (ASCII only; above that only whitespace matters)
+    private static final int BREAK = 1;
+    private static final int OWN_TOKEN = 2;
+    private static final int EXPONENT_MARK = 4;
+    private static final int SIGN = 8;
+    // In the prefix/postfix table, next to BREAK
+    private static final int SPACE = 2;
+
+    private final CharSequence input;
+    private int[] starts;
+    private int[] ends;
+    private int count;
+    // Value of every token that is a number literal, NaN for everything else; made on first use
+    private double[] values;
+
+    private ExpressionLexer(CharSequence input, int capacity) {
+        this.input = input;
+        this.starts = new int[Math.max(capacity, 4)];
+        this.ends = new int[starts.length];
+    }
+
+    static ExpressionLexer lex(CharSequence input, ExpressionEngine.Notation notation) {
+        return notation == ExpressionEngine.Notation.INFIX ? lexInfix(input) : lexPrefixPostfix(input);
+    }
+
+    static ExpressionLexer lexPrefixPostfix(CharSequence input) {
+        return lexPrefixPostfix(input, input.length() >= BULK_THRESHOLD);
+    }
+
+    // Which path is a parameter so the fuzzer can check both give the same tokens for the same input
+    static ExpressionLexer lexPrefixPostfix(CharSequence input, boolean bulk) {
+        int length = input.length();
+        ExpressionLexer lexer = new ExpressionLexer(input, Math.min(length, 1 << 16));
+        if (bulk) {
+            if (!lexer.bulkPrefixPostfix()) {
+                lexer.splitIntoCharacters();
+            }
+            return lexer;
+        }
+        boolean sawSpace = false;
+        int runStart = -1;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            // A bracket ends the token it's in, just like whitespace, but isn't a token itself
+            if (Character.isWhitespace(c) || OperatorRegistry.isBracket(c)) {
+                sawSpace |= c == ' ';
+                if (runStart >= 0) {
+                    lexer.add(runStart, i);
+                    runStart = -1;
+                }
+            } else if (runStart < 0) {
+                runStart = i;
+            }
+        }
+        if (runStart >= 0) {
+            lexer.add(runStart, length);
+        }
+        if (!sawSpace) {
+            lexer.splitIntoCharacters();
+        }
+        return lexer;
+    }
+
+    static ExpressionLexer lexInfix(CharSequence input) {
+        return lexInfix(input, input.length() >= BULK_THRESHOLD);
+    }
+
+    static ExpressionLexer lexInfix(CharSequence input, boolean bulk) {
+        int length = input.length();
+        ExpressionLexer lexer = new ExpressionLexer(input, Math.min(length, 1 << 16));
+        if (bulk) {
+            lexer.bulkInfix();
+            return lexer;
+        }
+        int runStart = -1;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            boolean symbol = OperatorRegistry.isSymbol(c)
+                    && !(runStart >= 0 && NumberLiteral.isExponentSign(input, runStart, i, length));
+            if (symbol || Character.isWhitespace(c)) {
+                if (runStart >= 0) {
+                    lexer.add(runStart, i);
+                    runStart = -1;
+                }
+                if (symbol) {
+                    lexer.add(i, i + 1);
+                }
+            } else if (runStart < 0) {
+                runStart = i;
+            }
+        }
+        if (runStart >= 0) {
+            lexer.add(runStart, length);
+        }
+        return lexer;
+    }
+
+    // lexPrefixPostfix for big inputs: whitespace and brackets break tokens. Returns whether there was a space.
+    private boolean bulkPrefixPostfix() {
+        byte[] table = new byte[OperatorRegistry.TABLE_SIZE];
+        for (char c = 0; c < table.length; c++) {
+            table[c] = (byte) ((Character.isWhitespace(c) || OperatorRegistry.isBracket(c) ? BREAK : 0)
+                    | (c == ' ' ? SPACE : 0));
+        }
+        int length = input.length();
+        long spaces = 0;
+        int runStart = -1;
+        for (int base = 0; base < length; base += 64) {
+            int n = Math.min(64, length - base);
+            // Past the end counts as a break, so the last operand ends there
+            long breaks = n == 64 ? 0 : -1L << n;
+            for (int k = 0; k < n; k++) {
+                char c = input.charAt(base + k);
+                int kind = c < table.length ? table[c] : Character.isWhitespace(c) ? BREAK : 0;
+                breaks |= (long) (kind & BREAK) << k;
+                spaces |= (long) ((kind >>> 1) & 1) << k;
+            }
+            runStart = addTokens(base, breaks, 0, runStart);
+        }
+        if (runStart >= 0) {
+            add(runStart, length);
+        }
+        return spaces != 0;
+    }
+
+    // lexInfix for big inputs
+    private void bulkInfix() {
+        byte[] table = new byte[OperatorRegistry.TABLE_SIZE];
+        for (char c = 0; c < table.length; c++) {
+            boolean symbol = OperatorRegistry.isSymbol(c);
+            table[c] = (byte) ((symbol || Character.isWhitespace(c) ? BREAK : 0)
+                    | (symbol ? OWN_TOKEN : 0)
+                    | (c == 'e' || c == 'E' ? EXPONENT_MARK : 0)
+                    | (symbol && NumberLiteral.isSign(c) ? SIGN : 0));
+        }
+        int length = input.length();
+        int runStart = -1;
+        boolean markBefore = false;
+        for (int base = 0; base < length; base += 64) {
+            int n = Math.min(64, length - base);
+            long breaks = n == 64 ? 0 : -1L << n;
+            long symbols = 0;
+            long marks = 0;
+            long signs = 0;
+            for (int k = 0; k < n; k++) {
+                char c = input.charAt(base + k);
+                int kind = c < table.length ? table[c] : Character.isWhitespace(c) ? BREAK : 0;
+                breaks |= (long) (kind & BREAK) << k;
+                symbols |= (long) ((kind >>> 1) & 1) << k;
+                marks |= (long) ((kind >>> 2) & 1) << k;
+                signs |= (long) ((kind >>> 3) & 1) << k;
+            }
+            // A sign right after an e may be part of a number ("1e-5"); that's rare, so each one is
+            // checked on its own and, if it is, turned back into an operand char
+            long candidates = signs & ((marks << 1) | (markBefore ? 1 : 0));
+            while (candidates != 0) {
+                int k = Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                long breaksBelow = breaks & ((1L << k) - 1);
+                int operandStart = breaksBelow != 0 ? base + 64 - Long.numberOfLeadingZeros(breaksBelow)
+                        : runStart >= 0 ? runStart : base;
+                if (NumberLiteral.isExponentSign(input, operandStart, base + k, length)) {
+                    breaks &= ~(1L << k);
+                    symbols &= ~(1L << k);
+                }
+            }
+            markBefore = (marks >>> 63) != 0;
+            runStart = addTokens(base, breaks, symbols, runStart);
+        }
+        if (runStart >= 0) {
+            add(runStart, length);
+        }
+    }
+
+    // The tokens of one 64-char block, in order. An operand still going at the end of the block
+    // isn't added yet; its start is returned (-1 if there is none) and passed in with the next block.
+    private int addTokens(int base, long breaks, long symbols, int runStart) {
+        if (runStart >= 0) {
+            int end = Long.numberOfTrailingZeros(breaks);
+            if (end == 64) {
+                return runStart;
+            }
+            add(runStart, base + end);
+        }
+        long operands = ~breaks;
+        // Operand chars after a break; bit 0 only if no operand ran into this block
+        long operandStarts = operands & ~((operands << 1) | (runStart >= 0 ? 1 : 0));
+        long tokenStarts = symbols | operandStarts;
+        int open = -1;
+        while (tokenStarts != 0) {
+            int k = Long.numberOfTrailingZeros(tokenStarts);
+            tokenStarts &= tokenStarts - 1;
+            if (((symbols >>> k) & 1) != 0) {
+                add(base + k, base + k + 1);
+                continue;
+            }
+            int end = Long.numberOfTrailingZeros(breaks & (-1L << k));
+            if (end == 64) {
+                open = base + k;
+            } else {
+                add(base + k, base + end);
+            }
+        }
+        return open;
+    }
+
+    // Tokens that were already split, e.g. by the visualizer
+    static ExpressionLexer ofTokens(String[] tokens) {
+        int total = 0;
+        for (String token : tokens) {
+            total += token.length();
+        }
+        StringBuilder joined = new StringBuilder(total);
+        ExpressionLexer lexer = new ExpressionLexer(joined, tokens.length);
+        for (String token : tokens) {
+            int start = joined.length();
+            joined.append(token);
+            lexer.add(start, joined.length());
+        }
+        return lexer;
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count++] = end;
+    }
+
+    // Without spaces every character is a token. The runs we found hold no whitespace or brackets,
+    // so each of their characters becomes one token (working backwards so we can do it in place).
+    private void splitIntoCharacters() {
+        int characters = 0;
+        for (int t = 0; t < count; t++) {
+            characters += ends[t] - starts[t];
+        }
+        if (characters == count) {
+            return;
+        }
+        int[] runStarts = Arrays.copyOf(starts, count);
+        int[] runEnds = Arrays.copyOf(ends, count);
+        if (starts.length < characters) {
+            starts = new int[characters];
+            ends = new int[characters];
+        }
+        int runs = count;
+        count = 0;
+        for (int r = 0; r < runs; r++) {
+            for (int i = runStarts[r]; i < runEnds[r]; i++) {
+                starts[count] = i;
+                ends[count++] = i + 1;
+            }
+        }
+    }
+
+    CharSequence input() {
+        return input;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int start(int token) {
+        return starts[token];
+    }
+
+    int end(int token) {
+        return ends[token];
+    }
+
+    int length(int token) {
+        return ends[token] - starts[token];
+    }
+
+    // The character of a one-character token, 0 for longer ones
+    char symbol(int token) {
+        return ends[token] - starts[token] == 1 ? input.charAt(starts[token]) : 0;
+    }
+
+    boolean isOperator(int token) {
+        return OperatorRegistry.isOperator(symbol(token));
+    }
+
+    // The number a token stands for, NaN if it's a name, an operator or not a well-formed number
+    double value(int token) {
+        return values()[token];
+    }
+
+    // All token values, parsed in one pass the first time they're needed; conversions never ask
+    double[] values() {
+        if (values == null) {
+            double[] parsed = new double[count];
+            for (int t = 0; t < count; t++) {
+                parsed[t] = ends[t] > starts[t] && NumberLiteral.startsNumber(input.charAt(starts[t]))
+                        ? NumberLiteral.parse(input, starts[t], ends[t])
+                        : Double.NaN;
+            }
+            values = parsed;
+        }
+        return values;
+    }
+
+    // Copies the token out of the input
+    String text(int token) {
+        return input.subSequence(starts[token], ends[token]).toString();
+    }
+
+    String[] toStrings() {
+        String[] tokens = new String[count];
+        for (int t = 0; t < count; t++) {
+            tokens[t] = text(t);
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,441 @@
+import java.util.Arrays;
+
+// Infix to prefix or postfix that only redoes the part of the expression an edit touched
+// The last input is kept as a tree of bracket groups: every group (and the whole input) knows its
+// top-level items - operands, operators and the groups nested in it - where they are in the text, and
+// where each one's text went in the output. A group is one subtree of the expression, so in prefix
+// and postfix its output is one contiguous range.
+// On update we find the changed range by comparing the old and new text from both ends, then:
+//   - if it stays inside one operand, that operand is renamed where it is in the output
+//   - otherwise the smallest group whose inside holds the whole change is parsed again; the groups
+//     nested in it that the edit didn't touch are kept as they are (their text isn't even looked at)
+//     and their output is copied over
+// and the group's output range is replaced in the result. Groups around it only move their offsets.
+// Anything that doesn't parse locally falls back to parsing everything, which also produces the error.
+// Results and errors are the same as ExpressionEngine.convert's.
+final class IncrementalConverter {
+    private static final byte OPERAND = 0;
+    private static final byte OPERATOR = 1;
+    private static final byte GROUP = 2;
+
+    private final boolean toPrefix;
+    private String text;
+    private Group root;
+    private final StringBuilder output = new StringBuilder();
+
+    IncrementalConverter(ExpressionEngine.Notation target) {
+        if (target == ExpressionEngine.Notation.INFIX) {
+            throw new IllegalArgumentException("Incremental conversion goes from infix to prefix or postfix");
+        }
+        toPrefix = target == ExpressionEngine.Notation.PREFIX;
+    }
+
+    // Convert the new text, reusing whatever the previous one left; throws IllegalArgumentException
+    // with ExpressionEngine.convert's messages (and forgets the previous text, as it isn't valid anymore)
+    String update(String newText) {
+        if (newText.trim().isEmpty()) {
+            forget();
+            throw new IllegalArgumentException("Please enter an expression!");
+        }
+        if (root != null && newText.equals(text)) {
+            return output.toString();
+        }
+        if (root == null || !patch(newText)) {
+            try {
+                parseAll(newText);
+            } catch (IllegalArgumentException e) {
+                forget();
+                throw e;
+            }
+        }
+        text = newText;
+        return output.toString();
+    }
+
+    private void forget() {
+        text = null;
+        root = null;
+        output.setLength(0);
+    }
+
+    private void parseAll(String newText) {
+        Group parsed = parse(newText, 0, newText.length(), null, 0, 0, 0, 0);
+        StringBuilder written = new StringBuilder(newText.length() + 16);
+        emit(parsed, newText, 0, written);
+        root = parsed;
+        output.setLength(0);
+        output.append(written);
+    }
+
+    // Redo only what the edit touched; false if that can't be done locally
+    private boolean patch(String newText) {
+        String old = text;
+        int oldLength = old.length();
+        int newLength = newText.length();
+        int limit = Math.min(oldLength, newLength);
+        int editStart = 0;
+        while (editStart < limit && old.charAt(editStart) == newText.charAt(editStart)) {
+            editStart++;
+        }
+        int same = 0;
+        while (same < limit - editStart
+                && old.charAt(oldLength - 1 - same) == newText.charAt(newLength - 1 - same)) {
+            same++;
+        }
+        // The old text from editStart to editEnd became newText from editStart to editEnd + delta
+        int editEnd = oldLength - same;
+        int delta = newLength - oldLength;
+
+        // Walk down to the smallest group whose inside holds the whole edit
+        Group group = root;
+        int contentStart = 0;
+        int outputStart = 0;
+        while (true) {
+            int k = lastItemStartingBefore(group, editStart - contentStart);
+            if (k < 0 || group.kind[k] != GROUP || editEnd > contentStart + group.end[k] - 1) {
+                break;
+            }
+            outputStart += group.outputAt[k];
+            contentStart += group.start[k] + 1;
+            group = group.children[k];
+        }
+
+        // Still one operand afterwards: rename it in place
+        int k = lastItemStartingBefore(group, editStart - contentStart + 1);
+        if (k >= 0 && group.kind[k] == OPERAND && editEnd <= contentStart + group.end[k]) {
+            int tokenStart = contentStart + group.start[k];
+            int tokenEnd = contentStart + group.end[k];
+            if (isOperand(newText, tokenStart, tokenEnd + delta)) {
+                int at = outputStart + group.outputAt[k];
+                output.replace(at, at + tokenEnd - tokenStart, newText.substring(tokenStart, tokenEnd + delta));
+                moveAfter(group, k, delta, delta);
+                propagate(group, delta, delta);
+                return true;
+            }
+        }
+
+        Group replacement;
+        try {
+            replacement = parse(newText, contentStart, contentStart + group.length + delta,
+                    group, outputStart, editStart, editEnd, delta);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        StringBuilder written = new StringBuilder(group.outputLength + Math.max(delta, 0) * 2 + 16);
+        emit(replacement, newText, contentStart, written);
+        int outputDelta = written.length() - group.outputLength;
+        output.replace(outputStart, outputStart + group.outputLength, written.toString());
+
+        replacement.parent = group.parent;
+        replacement.index = group.index;
+        replacement.openBracket = group.openBracket;
+        if (group.parent == null) {
+            root = replacement;
+        } else {
+            group.parent.children[group.index] = replacement;
+        }
+        for (int item = 0; item < replacement.count; item++) {
+            if (replacement.kind[item] == GROUP) {
+                replacement.children[item].parent = replacement;
+                replacement.children[item].index = item;
+            }
+        }
+        propagate(replacement, delta, outputDelta);
+        return true;
+    }
+
+    // Parse text[from, to) as the inside of one group. Groups of old that lie completely outside the
+    // edit are reused instead of parsed (old is null for a fresh parse).
+    private Group parse(String text, int from, int to, Group old, int oldOutputStart,
+                        int editStart, int editEnd, int delta) {
+        // Groups still waiting for their closing bracket, and where their inside starts
+        Group[] open = new Group[8];
+        int[] openAt = new int[8];
+        int depth = 0;
+        Group current = new Group();
+        int currentStart = from;
+
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (OperatorRegistry.isOperator(c)) {
+                current.add(OPERATOR, i - currentStart, i - currentStart + 1, c, null);
+                i++;
+            } else if (OperatorRegistry.isOpenBracket(c)) {
+                int reused = depth == 0 && old != null ? reusableGroup(old, from, i, editStart, editEnd, delta) : -1;
+                if (reused >= 0) {
+                    Group child = old.children[reused];
+                    int span = old.end[reused] - old.start[reused];
+                    child.copyFrom = oldOutputStart + old.outputAt[reused];
+                    current.add(GROUP, i - from, i - from + span, (char) 0, child);
+                    i += span;
+                    continue;
+                }
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                    openAt = Arrays.copyOf(openAt, depth * 2);
+                }
+                open[depth] = current;
+                openAt[depth++] = currentStart;
+                current = new Group();
+                current.openBracket = c;
+                currentStart = i + 1;
+                i++;
+            } else if (OperatorRegistry.isCloseBracket(c)) {
+                if (depth == 0 || OperatorRegistry.partner(c) != current.openBracket) {
+                    throw invalid();
+                }
+                Group child = current;
+                child.length = i - currentStart;
+                finish(child);
+                current = open[--depth];
+                int childOpen = currentStart - 1;
+                currentStart = openAt[depth];
+                current.add(GROUP, childOpen - currentStart, i + 1 - currentStart, (char) 0, child);
+                child.parent = current;
+                child.index = current.count - 1;
+                i++;
+            } else {
+                int end = operandEnd(text, i, to);
+                current.add(OPERAND, i - currentStart, end - currentStart, (char) 0, null);
+                i = end;
+            }
+        }
+        if (depth != 0) {
+            throw invalid();
+        }
+        current.length = to - from;
+        finish(current);
+        return current;
+    }
+
+    // The item of old that is a group opening at newPosition in the new text and lies completely
+    // outside the edit, or -1
+    private static int reusableGroup(Group old, int contentStart, int newPosition, int editStart, int editEnd, int delta) {
+        int oldPosition;
+        if (newPosition < editStart) {
+            oldPosition = newPosition;
+        } else if (newPosition >= editEnd + delta) {
+            oldPosition = newPosition - delta;
+        } else {
+            return -1;
+        }
+        int k = Arrays.binarySearch(old.start, 0, old.count, oldPosition - contentStart);
+        if (k < 0 || old.kind[k] != GROUP) {
+            return -1;
+        }
+        // A group before the edit must also close before it
+        if (oldPosition < editStart && contentStart + old.end[k] > editStart) {
+            return -1;
+        }
+        return k;
+    }
+
+    // Check the items alternate operand, operator, operand, ... and work out their output order
+    private void finish(Group group) {
+        int count = group.count;
+        if (count % 2 == 0) {
+            throw invalid();
+        }
+        for (int item = 0; item < count; item++) {
+            if ((group.kind[item] == OPERATOR) != (item % 2 == 1)) {
+                throw invalid();
+            }
+        }
+        // Shunting-yard over the items; brackets are already taken care of by the grouping
+        int[] order = new int[count];
+        int written = 0;
+        int[] stack = new int[count];
+        int top = 0;
+        for (int item = 0; item < count; item++) {
+            if (group.kind[item] != OPERATOR) {
+                order[written++] = item;
+                continue;
+            }
+            while (top > 0 && ExpressionEngine.popsBefore(group.operator[stack[top - 1]], group.operator[item])) {
+                order[written++] = stack[--top];
+            }
+            stack[top++] = item;
+        }
+        while (top > 0) {
+            order[written++] = stack[--top];
+        }
+        if (toPrefix) {
+            boolean[] operator = new boolean[count];
+            for (int p = 0; p < count; p++) {
+                operator[p] = group.kind[order[p]] == OPERATOR;
+            }
+            int[] prefix = PrefixPostfixTransducer.postfixToPrefix(operator);
+            int[] postfix = order;
+            order = new int[count];
+            for (int p = 0; p < count; p++) {
+                order[p] = postfix[prefix[p]];
+            }
+        }
+        group.order = order;
+        group.outputAt = new int[count];
+    }
+
+    // Write a group's output, space separated; groups that were kept are copied from the old output
+    private void emit(Group top, String text, int contentStart, StringBuilder out) {
+        Group[] groups = new Group[8];
+        int[] starts = new int[8];
+        int[] positions = new int[8];
+        int[] bases = new int[8];
+        int depth = 0;
+        groups[0] = top;
+        starts[0] = contentStart;
+        bases[0] = out.length();
+        depth++;
+        while (depth > 0) {
+            Group group = groups[depth - 1];
+            int position = positions[depth - 1];
+            if (position == group.count) {
+                group.outputLength = out.length() - bases[depth - 1];
+                depth--;
+                continue;
+            }
+            positions[depth - 1]++;
+            if (position > 0) {
+                out.append(' ');
+            }
+            int item = group.order[position];
+            group.outputAt[item] = out.length() - bases[depth - 1];
+            int start = starts[depth - 1];
+            if (group.kind[item] == OPERAND) {
+                out.append(text, start + group.start[item], start + group.end[item]);
+            } else if (group.kind[item] == OPERATOR) {
+                out.append(group.operator[item]);
+            } else {
+                Group child = group.children[item];
+                if (child.copyFrom >= 0) {
+                    out.append(output, child.copyFrom, child.copyFrom + child.outputLength);
+                    child.copyFrom = -1;
+                    continue;
+                }
+                if (depth == groups.length) {
+                    groups = Arrays.copyOf(groups, depth * 2);
+                    starts = Arrays.copyOf(starts, depth * 2);
+                    positions = Arrays.copyOf(positions, depth * 2);
+                    bases = Arrays.copyOf(bases, depth * 2);
+                }
+                groups[depth] = child;
+                starts[depth] = start + group.start[item] + 1;
+                positions[depth] = 0;
+                bases[depth] = out.length();
+                depth++;
+            }
+        }
+    }
+
+    // Item k of group grew by delta chars of text and outputDelta chars of output; move what comes after it
+    private static void moveAfter(Group group, int k, int delta, int outputDelta) {
+        group.end[k] += delta;
+        for (int item = k + 1; item < group.count; item++) {
+            group.start[item] += delta;
+            group.end[item] += delta;
+        }
+        int at = group.outputAt[k];
+        for (int item = 0; item < group.count; item++) {
+            if (group.outputAt[item] > at) {
+                group.outputAt[item] += outputDelta;
+            }
+        }
+        group.length += delta;
+        group.outputLength += outputDelta;
+    }
+
+    // Every group around this one grew by the same amounts
+    private static void propagate(Group group, int delta, int outputDelta) {
+        for (Group child = group; child.parent != null; child = child.parent) {
+            moveAfter(child.parent, child.index, delta, outputDelta);
+        }
+    }
+
+    // Last item of group that starts before position (relative to the group's inside), or -1
+    private static int lastItemStartingBefore(Group group, int position) {
+        int low = 0;
+        int high = group.count - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (group.start[middle] < position) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    // text[start, end) lexes as exactly one operand, and the operand before it (if it's a number
+    // ending in e) didn't just gain or lose the sign between them
+    private static boolean isOperand(String text, int start, int end) {
+        if (start >= end || !isOperandChar(text.charAt(start)) || operandEnd(text, start, text.length()) != end) {
+            return false;
+        }
+        return start < 2 || !NumberLiteral.isSign(text.charAt(start - 1))
+                || Character.toLowerCase(text.charAt(start - 2)) != 'e';
+    }
+
+    // End of the operand starting at start; a number's exponent sign is part of it ("1e-5")
+    private static int operandEnd(String text, int start, int to) {
+        int end = start + 1;
+        while (end < to && (isOperandChar(text.charAt(end)) || NumberLiteral.isExponentSign(text, start, end, to))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isOperandChar(char c) {
+        return !Character.isWhitespace(c) && !OperatorRegistry.isSymbol(c);
+    }
+
+    private static IllegalArgumentException invalid() {
+        return new IllegalArgumentException("Invalid Infix Expression!");
+    }
+
+    // A bracket group, or the whole input; positions are relative to the start of its inside
+    private static final class Group {
+        Group parent;
+        // Which item of the parent this is
+        int index;
+        char openBracket;
+        // Length of the inside
+        int length;
+
+        int count;
+        byte[] kind = new byte[4];
+        // For groups these include the brackets
+        int[] start = new int[4];
+        int[] end = new int[4];
+        char[] operator = new char[4];
+        Group[] children = new Group[4];
+
+        // Items in output order, and where each one's text starts in this group's output
+        int[] order;
+        int[] outputAt;
+        int outputLength;
+        // Where this group's output is in the old result while it's being reused, -1 otherwise
+        int copyFrom = -1;
+
+        void add(byte itemKind, int itemStart, int itemEnd, char itemOperator, Group child) {
+            if (count == kind.length) {
+                int capacity = count * 2;
+                kind = Arrays.copyOf(kind, capacity);
+                start = Arrays.copyOf(start, capacity);
+                end = Arrays.copyOf(end, capacity);
+                operator = Arrays.copyOf(operator, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            kind[count] = itemKind;
+            start[count] = itemStart;
+            end[count] = itemEnd;
+            operator[count] = itemOperator;
+            children[count++] = child;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide counters so the GUI and the diagnostics code can share numbers
+// Counters only go up; "max" values keep the largest value ever recorded.
+final class Metrics {
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> maxima = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    static void increment(String name) {
+        add(name, 1);
+    }
+
+    static void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    // Keep the largest value seen for this name
+    static void recordMax(String name, long value) {
+        AtomicLong max = maxima.computeIfAbsent(name, k -> new AtomicLong());
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    static long get(String name) {
+        LongAdder counter = counters.get(name);
+        if (counter != null) {
+            return counter.sum();
+        }
+        AtomicLong max = maxima.get(name);
+        return max == null ? 0 : max.get();
+    }
+
+    // Sorted copy of everything recorded so far
+    static Map<String, Long> snapshot() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, AtomicLong> entry : maxima.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+// Number literals: what counts as one, and turning one into a double without making a String
+// The grammar is digits with an optional decimal point and an optional exponent - 12, 3.5, .5, 7.,
+// 1e9, 2.5E-3. No sign in front (that's the minus operator) and no hex, NaN or Infinity.
+// It's kept as a tiny state machine so the lexers that can look ahead (ExpressionLexer,
+// IncrementalConverter) and the one that can't (StreamingShuntingYard) agree on where a literal
+// ends - the only place that matters is the sign of an exponent, which is part of the literal
+// ("1e-5") instead of being the minus operator.
+//
+// parse() reads the digits into a long and scales it by an exactly representable power of ten. When
+// the digits fit in 53 bits and the power is at most 10^22 both numbers are exact doubles, so one
+// multiplication or division gives the correctly rounded result (the classic fast path from
+// Clinger's "How to read floating point numbers accurately"). Anything else - more than 18
+// significant digits, huge or tiny exponents - goes to Double.parseDouble, which is slower but exact.
+final class NumberLiteral {
+    // States of the scanner; the ones a literal can end in are INTEGER, FRACTION and EXPONENT
+    static final int NOT_A_NUMBER = -1;
+    static final int START = 0;
+    static final int INTEGER = 1;
+    // A decimal point with no digit before it yet
+    static final int POINT = 2;
+    static final int FRACTION = 3;
+    // Just read the e, after at least one digit
+    static final int EXPONENT_MARK = 4;
+    static final int EXPONENT_SIGN = 5;
+    static final int EXPONENT = 6;
+
+    // Every power of ten a double holds exactly
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // Significant digits that always fit in a long
+    private static final int MAX_DIGITS = 18;
+    private static final long MAX_EXACT = 1L << 53;
+    // Exponents past this are infinity or zero anyway; stops the int from overflowing
+    private static final int EXPONENT_LIMIT = 100_000;
+
+    private NumberLiteral() {
+    }
+
+    static int next(int state, char c) {
+        boolean digit = c >= '0' && c <= '9';
+        switch (state) {
+            case START:
+                return digit ? INTEGER : c == '.' ? POINT : NOT_A_NUMBER;
+            case INTEGER:
+                return digit ? INTEGER : c == '.' ? FRACTION : isExponentMark(c) ? EXPONENT_MARK : NOT_A_NUMBER;
+            case POINT:
+                return digit ? FRACTION : NOT_A_NUMBER;
+            case FRACTION:
+                return digit ? FRACTION : isExponentMark(c) ? EXPONENT_MARK : NOT_A_NUMBER;
+            case EXPONENT_MARK:
+                return digit ? EXPONENT : isSign(c) ? EXPONENT_SIGN : NOT_A_NUMBER;
+            case EXPONENT_SIGN:
+            case EXPONENT:
+                return digit ? EXPONENT : NOT_A_NUMBER;
+            default:
+                return NOT_A_NUMBER;
+        }
+    }
+
+    static boolean isComplete(int state) {
+        return state == INTEGER || state == FRACTION || state == EXPONENT;
+    }
+
+    static boolean isSign(char c) {
+        return c == '+' || c == '-';
+    }
+
+    // Does the + or - at text[at] belong to the literal text[operandStart, at) instead of being an
+    // operator? Only right after the e of a number, and only if a digit follows.
+    static boolean isExponentSign(CharSequence text, int operandStart, int at, int end) {
+        if (!isSign(text.charAt(at)) || at + 1 >= end || at - 1 < operandStart || !isExponentMark(text.charAt(at - 1))) {
+            return false;
+        }
+        char after = text.charAt(at + 1);
+        return after >= '0' && after <= '9' && state(text, operandStart, at) == EXPONENT_MARK;
+    }
+
+    // Where the scanner is after text[start, end)
+    static int state(CharSequence text, int start, int end) {
+        int state = START;
+        for (int i = start; i < end && state != NOT_A_NUMBER; i++) {
+            state = next(state, text.charAt(i));
+        }
+        return state;
+    }
+
+    static boolean startsNumber(char c) {
+        return (c >= '0' && c <= '9') || c == '.';
+    }
+
+    // The value of text[start, end), or NaN if that isn't a literal
+    static double parse(CharSequence text, int start, int end) {
+        long mantissa = 0;
+        int significantDigits = 0;
+        // Power of ten the mantissa has to be scaled by: minus the kept fraction digits, plus the
+        // integer digits that didn't fit
+        int scale = 0;
+        boolean truncated = false;
+        int exponent = 0;
+        boolean negativeExponent = false;
+        int state = START;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            state = next(state, c);
+            if (state == NOT_A_NUMBER) {
+                return Double.NaN;
+            }
+            int digit = c - '0';
+            if (state == EXPONENT) {
+                exponent = Math.min(exponent * 10 + digit, EXPONENT_LIMIT);
+            } else if (state == EXPONENT_SIGN) {
+                negativeExponent = c == '-';
+            } else if (digit >= 0 && digit <= 9) {
+                boolean fraction = state == FRACTION;
+                if (significantDigits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    // Leading zeros aren't significant
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    if (fraction) {
+                        scale--;
+                    }
+                } else {
+                    truncated |= digit != 0;
+                    if (!fraction) {
+                        scale++;
+                    }
+                }
+            }
+        }
+        if (!isComplete(state)) {
+            return Double.NaN;
+        }
+        if (mantissa == 0 && !truncated) {
+            return 0.0;
+        }
+        int power = scale + (negativeExponent ? -exponent : exponent);
+        if (!truncated && mantissa <= MAX_EXACT) {
+            if (power >= 0 && power < POWERS_OF_TEN.length) {
+                return mantissa * POWERS_OF_TEN[power];
+            }
+            if (power < 0 && -power < POWERS_OF_TEN.length) {
+                return mantissa / POWERS_OF_TEN[-power];
+            }
+            // 1e30 and the like: move the extra zeros into the mantissa while it stays exact
+            int extra = power - (POWERS_OF_TEN.length - 1);
+            if (extra > 0 && extra < POWERS_OF_TEN.length) {
+                long tens = (long) POWERS_OF_TEN[extra];
+                if (mantissa <= MAX_EXACT / tens) {
+                    return (mantissa * tens) * POWERS_OF_TEN[POWERS_OF_TEN.length - 1];
+                }
+            }
+        }
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+
+    private static boolean isExponentMark(char c) {
+        return c == 'e' || c == 'E';
+    }
+}
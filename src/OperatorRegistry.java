@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+
+// Everything we know about operator and bracket characters, in plain arrays indexed by the char itself
+// Lookups are one array read, so the lexers, validators and converters never hash a String.
+// The built-in operators are + - * / ^ (^ is right-associative, so A ^ B ^ C means A ^ (B ^ C)).
+// More can be added with register(), or at startup with e.g.
+//   -Dstackexpconviz.operators=%:2:left,#:4:right
+// (symbol:precedence:associativity). Register operators before converting from other threads.
+final class OperatorRegistry {
+    enum Associativity {
+        LEFT,
+        RIGHT
+    }
+
+    // Operators and brackets have to be ASCII
+    static final int TABLE_SIZE = 128;
+
+    // 0 means "not an operator"; higher number = binds tighter
+    private static final byte[] PRECEDENCE = new byte[TABLE_SIZE];
+    private static final boolean[] RIGHT_ASSOCIATIVE = new boolean[TABLE_SIZE];
+    private static final byte[] ARITY = new byte[TABLE_SIZE];
+    // How to evaluate the operator, null if it can only be converted
+    private static final DoubleBinaryOperator[] FUNCTIONS = new DoubleBinaryOperator[TABLE_SIZE];
+    // For bracket characters: the other bracket of the pair, 0 for anything else
+    private static final char[] PARTNER = new char[TABLE_SIZE];
+    private static final boolean[] OPENING = new boolean[TABLE_SIZE];
+    // Operator symbols in the order they were registered, for menus and tooltips
+    private static volatile String symbols = "";
+
+    static {
+        addBracketPair('(', ')');
+        addBracketPair('[', ']');
+        addBracketPair('{', '}');
+
+        register('+', 1, Associativity.LEFT, (a, b) -> a + b);
+        register('-', 1, Associativity.LEFT, (a, b) -> a - b);
+        register('*', 2, Associativity.LEFT, (a, b) -> a * b);
+        register('/', 2, Associativity.LEFT, (a, b) -> a / b);
+        register('^', 3, Associativity.RIGHT, Math::pow);
+
+        // A bad entry must not fail the class initializer - every class that converts would be unusable
+        for (String problem : registerFromProperty(System.getProperty("stackexpconviz.operators"))) {
+            System.err.println("Ignoring operator definition: " + problem);
+        }
+    }
+
+    private OperatorRegistry() {
+    }
+
+    // Add (or redefine) a binary operator; throws IllegalArgumentException for symbols we can't use
+    static synchronized void register(char symbol, int precedence, Associativity associativity, DoubleBinaryOperator function) {
+        if (symbol >= TABLE_SIZE || Character.isLetterOrDigit(symbol) || Character.isWhitespace(symbol)
+                || symbol == '.' || isBracket(symbol)) {
+            throw new IllegalArgumentException("Can't use '" + symbol + "' as an operator");
+        }
+        if (precedence < 1 || precedence > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Precedence must be between 1 and " + Byte.MAX_VALUE);
+        }
+        RIGHT_ASSOCIATIVE[symbol] = associativity == Associativity.RIGHT;
+        // Everything that converts or animates works on two operands, so that's all we accept for now
+        ARITY[symbol] = 2;
+        FUNCTIONS[symbol] = function;
+        PRECEDENCE[symbol] = (byte) precedence;
+        if (symbols.indexOf(symbol) < 0) {
+            symbols = symbols + symbol;
+        }
+    }
+
+    // Reads "symbol:precedence[:left|right]" entries separated by commas. Each entry is registered on
+    // its own; the bad ones are skipped and come back as messages.
+    static List<String> registerFromProperty(String spec) {
+        List<String> problems = new ArrayList<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return problems;
+        }
+        for (String entry : spec.split(",")) {
+            try {
+                String[] parts = entry.trim().split(":");
+                if (parts.length < 2 || parts[0].length() != 1) {
+                    throw new IllegalArgumentException("expected symbol:precedence[:left|right]");
+                }
+                Associativity associativity = parts.length > 2 && parts[2].equalsIgnoreCase("right")
+                        ? Associativity.RIGHT : Associativity.LEFT;
+                // NumberFormatException is an IllegalArgumentException too
+                register(parts[0].charAt(0), Integer.parseInt(parts[1].trim()), associativity, null);
+            } catch (IllegalArgumentException e) {
+                problems.add("'" + entry + "': " + e.getMessage());
+            }
+        }
+        return problems;
+    }
+
+    static boolean isOperator(char c) {
+        return c < TABLE_SIZE && PRECEDENCE[c] != 0;
+    }
+
+    static boolean isOperator(String token) {
+        return token.length() == 1 && isOperator(token.charAt(0));
+    }
+
+    static int precedence(char c) {
+        return c < TABLE_SIZE ? PRECEDENCE[c] : 0;
+    }
+
+    static int precedence(String token) {
+        return token.length() == 1 ? precedence(token.charAt(0)) : 0;
+    }
+
+    static boolean isRightAssociative(char c) {
+        return c < TABLE_SIZE && RIGHT_ASSOCIATIVE[c];
+    }
+
+    // How many operands the operator takes, 0 for anything that isn't an operator
+    static int arity(char c) {
+        return c < TABLE_SIZE ? ARITY[c] : 0;
+    }
+
+    static int arity(String token) {
+        return token.length() == 1 ? arity(token.charAt(0)) : 0;
+    }
+
+    static boolean isBracket(char c) {
+        return c < TABLE_SIZE && PARTNER[c] != 0;
+    }
+
+    static boolean isOpenBracket(char c) {
+        return c < TABLE_SIZE && OPENING[c];
+    }
+
+    static boolean isCloseBracket(char c) {
+        return isBracket(c) && !OPENING[c];
+    }
+
+    // The opening bracket that goes with a closing one (or the other way round)
+    static char partner(char bracket) {
+        return PARTNER[bracket];
+    }
+
+    // Operators and brackets always stand alone as tokens
+    static boolean isSymbol(char c) {
+        return isOperator(c) || isBracket(c);
+    }
+
+    static double apply(char operator, double left, double right) {
+        DoubleBinaryOperator function = operator < TABLE_SIZE ? FUNCTIONS[operator] : null;
+        if (function == null) {
+            throw new IllegalArgumentException(isOperator(operator)
+                    ? "Operator '" + operator + "' can't be evaluated"
+                    : "Unknown operator: " + operator);
+        }
+        return function.applyAsDouble(left, right);
+    }
+
+    static String symbols() {
+        return symbols;
+    }
+
+    static int highestPrecedence() {
+        int highest = 0;
+        for (int i = 0; i < symbols.length(); i++) {
+            highest = Math.max(highest, precedence(symbols.charAt(i)));
+        }
+        return highest;
+    }
+
+    private static void addBracketPair(char open, char close) {
+        PARTNER[open] = close;
+        PARTNER[close] = open;
+        OPENING[open] = true;
+    }
+}
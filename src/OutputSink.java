@@ -0,0 +1,33 @@
+import java.io.IOException;
+
+// Where converters write their output, a token or a separator at a time
+// A result never has to exist as one big String: write into a StringBuilder with of(), or straight
+// to a file, socket or stdout with ChannelSink.
+interface OutputSink {
+    void append(char c) throws IOException;
+
+    void append(CharSequence text, int start, int end) throws IOException;
+
+    default void append(CharSequence text) throws IOException {
+        append(text, 0, text.length());
+    }
+
+    // Push out anything buffered; the sink stays usable
+    default void flush() throws IOException {
+    }
+
+    // For callers that want a String after all
+    static OutputSink of(StringBuilder builder) {
+        return new OutputSink() {
+            @Override
+            public void append(char c) {
+                builder.append(c);
+            }
+
+            @Override
+            public void append(CharSequence text, int start, int end) {
+                builder.append(text, start, end);
+            }
+        };
+    }
+}
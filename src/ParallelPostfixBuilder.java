@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Builds a CompactExpression from a huge postfix input on all cores
+// The tree's nodes are the postfix tokens in order (CompactExpression numbers nodes in postfix order),
+// so the only work is linking every operator to its two operands and numbering the operand names.
+//
+// 1. The stack depth after every token is a parallel prefix sum over the arity changes
+//    (ArityValidator.runningSums). That also validates the input and says which stack level every
+//    operand of every operator sits at.
+// 2. The tokens are split into chunks that are linked in parallel, each with its own small stack and
+//    its own symbol table. An operator whose operands were finished in an earlier chunk can't be linked
+//    yet; it remembers the stack level instead.
+// 3. One short pass over the chunks, in order, replays what each chunk left on the stack (the same
+//    idea as BracketChecker's chunk summaries), which links the remaining operators and merges the
+//    symbol tables so every name gets the id the sequential builder would give it.
+// 4. The operand ids are rewritten to the merged ones, in parallel again.
+// The result is the same tree, node for node, as CompactExpression.fromPostfix.
+final class ParallelPostfixBuilder {
+    // Token counts below this are built with CompactExpression.fromPostfix
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    // Tokens per chunk in the parallel passes
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private ParallelPostfixBuilder() {
+    }
+
+    // The extra passes only pay off with more than one core to spread them over
+    static boolean worthIt(int tokenCount) {
+        return tokenCount >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    static CompactExpression build(ExpressionLexer tokens) {
+        return build(tokens, CHUNK_SIZE);
+    }
+
+    // The chunk size is a parameter so small inputs can exercise the parallel path too
+    static CompactExpression build(ExpressionLexer tokens, int chunkSize) {
+        int count = tokens.count();
+        // Brackets are skipped by the sequential builder, which shifts the node numbers; only
+        // pre-split tokens can have them (the lexer drops brackets), so just leave those to it
+        if (IntStream.range(0, count).parallel().anyMatch(t -> OperatorRegistry.isBracket(tokens.symbol(t)))) {
+            return CompactExpression.fromPostfix(tokens);
+        }
+        int[] depth = ArityValidator.runningSums(tokens, true);
+        if (!ArityValidator.check(tokens, ExpressionEngine.Notation.POSTFIX, depth).isValid()) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+
+        int[] opcode = new int[count];
+        int[] left = new int[count];
+        int[] right = new int[count];
+        int chunks = (count + chunkSize - 1) / chunkSize;
+        List<Chunk> linked = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> linkChunk(tokens, depth, opcode, left, right, c * chunkSize,
+                        Math.min(count, (c + 1) * chunkSize)))
+                .collect(Collectors.toList());
+
+        SymbolTable symbols = merge(linked, depth, left, right);
+
+        linked.parallelStream().forEach(chunk -> {
+            for (int i = chunk.from; i < chunk.to; i++) {
+                if (opcode[i] < 0) {
+                    opcode[i] = ~chunk.globalIds[~opcode[i]];
+                }
+            }
+        });
+        return new CompactExpression(opcode, left, right, symbols);
+    }
+
+    // What one chunk leaves for the merge
+    private static final class Chunk {
+        final int from;
+        final int to;
+        final SymbolTable symbols = new SymbolTable();
+        // Operators with an operand from an earlier chunk; that child is stored as ~level for now
+        int[] pending;
+        int pendingCount;
+        // Finished subtrees still on the chunk's stack at the end, bottom first
+        int[] leftover;
+        int leftoverCount;
+        // Chunk-local symbol id -> merged id
+        int[] globalIds;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static Chunk linkChunk(ExpressionLexer tokens, int[] depth, int[] opcode, int[] left, int[] right,
+                                   int from, int to) {
+        Chunk chunk = new Chunk(from, to);
+        int[] stack = new int[to - from];
+        int top = 0;
+        int[] pending = new int[16];
+        int pendingCount = 0;
+        CharSequence input = tokens.input();
+
+        for (int i = from; i < to; i++) {
+            char symbol = tokens.symbol(i);
+            if (!OperatorRegistry.isOperator(symbol)) {
+                opcode[i] = ~chunk.symbols.id(input, tokens.start(i), tokens.end(i));
+                left[i] = -1;
+                right[i] = -1;
+                stack[top++] = i;
+                continue;
+            }
+            opcode[i] = symbol;
+            // After the operator the stack is depth[i] high: its left operand was at that level and
+            // its right operand one above. Levels are at least 1, so ~level is never -1.
+            right[i] = top > 0 ? stack[--top] : ~(depth[i] + 1);
+            left[i] = top > 0 ? stack[--top] : ~depth[i];
+            if (left[i] < -1) {
+                if (pendingCount == pending.length) {
+                    pending = Arrays.copyOf(pending, pendingCount * 2);
+                }
+                pending[pendingCount++] = i;
+            }
+            stack[top++] = i;
+        }
+        chunk.pending = pending;
+        chunk.pendingCount = pendingCount;
+        chunk.leftover = stack;
+        chunk.leftoverCount = top;
+        return chunk;
+    }
+
+    // Replay the chunks in order against one stack, kept as the node at every level
+    private static SymbolTable merge(List<Chunk> chunks, int[] depth, int[] left, int[] right) {
+        int maxDepth = Arrays.stream(depth).parallel().max().orElse(0);
+        int[] nodeAtLevel = new int[maxDepth + 2];
+        SymbolTable symbols = new SymbolTable();
+        for (Chunk chunk : chunks) {
+            // Everything this chunk needed from before it is still on the stack as it was when the chunk started
+            for (int k = 0; k < chunk.pendingCount; k++) {
+                int operator = chunk.pending[k];
+                if (left[operator] < -1) {
+                    left[operator] = nodeAtLevel[~left[operator]];
+                }
+                if (right[operator] < -1) {
+                    right[operator] = nodeAtLevel[~right[operator]];
+                }
+            }
+            // What it left behind is the top of the stack at the chunk's end
+            int bottom = depth[chunk.to - 1] - chunk.leftoverCount + 1;
+            for (int k = 0; k < chunk.leftoverCount; k++) {
+                nodeAtLevel[bottom + k] = chunk.leftover[k];
+            }
+            // Names in the order they first appear in the chunk, chunks in order: the same
+            // first-appearance numbering as a single pass
+            chunk.globalIds = new int[chunk.symbols.size()];
+            for (int id = 0; id < chunk.globalIds.length; id++) {
+                chunk.globalIds[id] = symbols.id(chunk.symbols.get(id));
+            }
+        }
+        return symbols;
+    }
+}
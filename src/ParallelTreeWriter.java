@@ -0,0 +1,212 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Writes a huge CompactExpression into one char[] of exactly the right size, on all cores
+// Phase 1 works out how long every subtree's text is. Each node writes a fixed amount itself (its
+// token plus a space in prefix/postfix; the operator, two spaces and two brackets in infix), and a
+// subtree is a contiguous run of nodes in postfix order, so its length is the difference of two
+// entries of a parallel prefix sum over those amounts.
+// Phase 2 places every subtree at its offset: the first operand starts right after its operator (or
+// bracket), the second after the first operand's text. The few nodes above GRAIN-sized subtrees are
+// placed in one pass; everything below them is written in parallel, each subtree by one task, into
+// its own part of the array. Nothing is appended, so nothing is resized or copied.
+// Postfix doesn't even need the tree - the nodes are already in output order.
+final class ParallelTreeWriter {
+    // Node counts below this are written with CompactExpression.write
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    // Subtrees up to this many nodes are written by one task
+    static final int GRAIN = 1 << 12;
+    // The longest char[] the JVM will reliably hand out
+    private static final long MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private ParallelTreeWriter() {
+    }
+
+    static boolean worthIt(int nodes) {
+        return nodes >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    // The same text as CompactExpression.render(notation)
+    static char[] write(CompactExpression tree, ExpressionEngine.Notation notation) {
+        return write(tree, notation, GRAIN);
+    }
+
+    // The grain is a parameter so small trees can exercise the parallel path too
+    static char[] write(CompactExpression tree, ExpressionEngine.Notation notation, int grain) {
+        int size = tree.size();
+        boolean infix = notation == ExpressionEngine.Notation.INFIX;
+        // ends[i] = where node i's own text ends if the nodes were laid out in postfix order
+        int[] ends = new int[size];
+        Arrays.parallelSetAll(ends, i -> ownLength(tree, i, infix));
+        long total = Arrays.stream(ends).parallel().asLongStream().sum() - (infix ? 0 : 1);
+        if (total > MAX_LENGTH) {
+            throw new IllegalArgumentException("Expression is too long to write out (" + total + " chars)");
+        }
+        Arrays.parallelPrefix(ends, Integer::sum);
+        char[] out = new char[(int) total];
+
+        if (notation == ExpressionEngine.Notation.POSTFIX) {
+            writePostfix(tree, ends, out);
+            return out;
+        }
+
+        // Where each subtree starts in postfix order; the one pass that has to go bottom-up in order,
+        // but it's a single int copy per node
+        int[] first = new int[size];
+        for (int i = 0; i < size; i++) {
+            first[i] = tree.isOperator(i) ? first[tree.left(i)] : i;
+        }
+        Layout layout = new Layout(tree, ends, first, infix, out);
+
+        // Place the big nodes; every subtree of at most grain nodes under them becomes a task
+        int[] taskNodes = new int[16];
+        int[] taskOffsets = new int[16];
+        int tasks = 0;
+        int[] stack = new int[32];
+        int top = 0;
+        int root = tree.root();
+        if (layout.nodes(root) <= grain) {
+            layout.writeSubtree(root, 0);
+            return out;
+        }
+        stack[top++] = root;
+        stack[top++] = 0;
+        while (top > 0) {
+            int offset = stack[--top];
+            int node = stack[--top];
+            layout.placeOperator(node, offset);
+            for (int side = 0; side < 2; side++) {
+                int child = side == 0 ? tree.left(node) : tree.right(node);
+                int childOffset = side == 0 ? layout.leftOffset(node, offset) : layout.rightOffset(node, offset);
+                if (!tree.isOperator(child)) {
+                    // Not worth a task of its own (long chains have one of these at every step)
+                    writeToken(tree, child, out, childOffset);
+                } else if (layout.nodes(child) <= grain) {
+                    if (tasks == taskNodes.length) {
+                        taskNodes = Arrays.copyOf(taskNodes, tasks * 2);
+                        taskOffsets = Arrays.copyOf(taskOffsets, tasks * 2);
+                    }
+                    taskNodes[tasks] = child;
+                    taskOffsets[tasks++] = childOffset;
+                } else {
+                    if (top + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = child;
+                    stack[top++] = childOffset;
+                }
+            }
+        }
+        int[] nodes = taskNodes;
+        int[] offsets = taskOffsets;
+        IntStream.range(0, tasks).parallel().forEach(t -> layout.writeSubtree(nodes[t], offsets[t]));
+        return out;
+    }
+
+    // What a node writes itself; in prefix/postfix that includes the space after it
+    private static int ownLength(CompactExpression tree, int node, boolean infix) {
+        if (!tree.isOperator(node)) {
+            return tree.symbol(node).length() + (infix ? 0 : 1);
+        }
+        return infix ? 5 : 2;
+    }
+
+    // Postfix output is the nodes in order, so every node already knows its offset
+    private static void writePostfix(CompactExpression tree, int[] ends, char[] out) {
+        int size = tree.size();
+        int chunks = (size + GRAIN - 1) / GRAIN;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            for (int i = c * GRAIN; i < Math.min(size, (c + 1) * GRAIN); i++) {
+                int offset = i == 0 ? 0 : ends[i - 1];
+                offset = writeToken(tree, i, out, offset);
+                if (i < size - 1) {
+                    out[offset] = ' ';
+                }
+            }
+        });
+    }
+
+    private static int writeToken(CompactExpression tree, int node, char[] out, int offset) {
+        if (tree.isOperator(node)) {
+            out[offset] = tree.operator(node);
+            return offset + 1;
+        }
+        String symbol = tree.symbol(node);
+        symbol.getChars(0, symbol.length(), out, offset);
+        return offset + symbol.length();
+    }
+
+    // Subtree sizes and text lengths from phase 1, and where each part of a node goes
+    private static final class Layout {
+        final CompactExpression tree;
+        final int[] ends;
+        final int[] first;
+        final boolean infix;
+        final char[] out;
+
+        Layout(CompactExpression tree, int[] ends, int[] first, boolean infix, char[] out) {
+            this.tree = tree;
+            this.ends = ends;
+            this.first = first;
+            this.infix = infix;
+            this.out = out;
+        }
+
+        int nodes(int node) {
+            return node - first[node] + 1;
+        }
+
+        // Text length of the whole subtree, without the trailing space of prefix
+        int length(int node) {
+            int start = first[node] == 0 ? 0 : ends[first[node] - 1];
+            return ends[node] - start - (infix ? 0 : 1);
+        }
+
+        // "+ left right" or "(left + right)"
+        int leftOffset(int node, int offset) {
+            return offset + (infix ? 1 : 2);
+        }
+
+        int rightOffset(int node, int offset) {
+            return leftOffset(node, offset) + length(tree.left(node)) + (infix ? 3 : 1);
+        }
+
+        // Everything an operator writes itself: the operator, spaces and brackets
+        void placeOperator(int node, int offset) {
+            char operator = tree.operator(node);
+            if (infix) {
+                int middle = offset + 1 + length(tree.left(node));
+                out[offset] = '(';
+                out[middle] = ' ';
+                out[middle + 1] = operator;
+                out[middle + 2] = ' ';
+                out[offset + length(node) - 1] = ')';
+            } else {
+                out[offset] = operator;
+                out[offset + 1] = ' ';
+                out[rightOffset(node, offset) - 1] = ' ';
+            }
+        }
+
+        void writeSubtree(int node, int offset) {
+            int[] stack = new int[2 * nodes(node) + 2];
+            int top = 0;
+            stack[top++] = node;
+            stack[top++] = offset;
+            while (top > 0) {
+                int at = stack[--top];
+                int current = stack[--top];
+                if (!tree.isOperator(current)) {
+                    writeToken(tree, current, out, at);
+                    continue;
+                }
+                placeOperator(current, at);
+                stack[top++] = tree.left(current);
+                stack[top++] = leftOffset(current, at);
+                stack[top++] = tree.right(current);
+                stack[top++] = rightOffset(current, at);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+
+// Prefix <-> postfix by moving tokens, not by gluing strings together
+// Both notations list every subtree as one contiguous run of tokens; they only differ in whether
+// the operator comes before or after its operands. So we first count, for every token, how many
+// tokens its subtree covers (arity counting with a stack of indices), and then place each token
+// straight at its final position:
+//   postfix -> prefix: the root goes first, a node's left subtree starts right after it and its
+//                      right subtree right after that
+//   prefix -> postfix: the root goes last, a node's right subtree ends right before it and its
+//                      left subtree right before that
+// Parents are placed before their children, so one pass over the tokens is enough. Everything is
+// int arrays sized once, O(n) overall.
+final class PrefixPostfixTransducer {
+    private PrefixPostfixTransducer() {
+    }
+
+    // Token indices in the other notation; throws IllegalArgumentException("Invalid Expression!")
+    // if the tokens aren't exactly one expression
+    static int[] reorder(ExpressionLexer tokens, ExpressionEngine.Notation from) {
+        int count = tokens.count();
+        boolean[] operator = new boolean[count];
+        for (int t = 0; t < count; t++) {
+            operator[t] = tokens.isOperator(t);
+        }
+        return from == ExpressionEngine.Notation.POSTFIX ? postfixToPrefix(operator) : prefixToPostfix(operator);
+    }
+
+    static int[] postfixToPrefix(boolean[] operator) {
+        int count = operator.length;
+        int[] size = subtreeSizes(operator, false);
+        int[] position = new int[count];
+        int[] order = new int[count];
+        // The root is the last token; children come before their parent, so walk backwards
+        position[count - 1] = 0;
+        for (int t = count - 1; t >= 0; t--) {
+            order[position[t]] = t;
+            if (operator[t]) {
+                int right = t - 1;
+                int left = right - size[right];
+                position[left] = position[t] + 1;
+                position[right] = position[t] + 1 + size[left];
+            }
+        }
+        return order;
+    }
+
+    static int[] prefixToPostfix(boolean[] operator) {
+        int count = operator.length;
+        int[] size = subtreeSizes(operator, true);
+        int[] position = new int[count];
+        int[] order = new int[count];
+        // The root is the first token; children come after their parent
+        position[0] = count - 1;
+        for (int t = 0; t < count; t++) {
+            order[position[t]] = t;
+            if (operator[t]) {
+                int left = t + 1;
+                int right = left + size[left];
+                position[right] = position[t] - 1;
+                position[left] = position[t] - 1 - size[right];
+            }
+        }
+        return order;
+    }
+
+    // Tokens covered by each token's subtree. Postfix is read left to right and prefix right to left;
+    // either way an operator finds its two operand subtrees on top of the stack.
+    private static int[] subtreeSizes(boolean[] operator, boolean prefix) {
+        int count = operator.length;
+        if (count == 0) {
+            throw invalid();
+        }
+        int[] size = new int[count];
+        int[] stack = new int[count];
+        int top = 0;
+        for (int i = 0; i < count; i++) {
+            int t = prefix ? count - 1 - i : i;
+            if (operator[t]) {
+                if (top < 2) {
+                    throw invalid();
+                }
+                size[t] = 1 + size[stack[--top]] + size[stack[--top]];
+            } else {
+                size[t] = 1;
+            }
+            stack[top++] = t;
+        }
+        if (top != 1) {
+            throw invalid();
+        }
+        return size;
+    }
+
+    // Write the other notation, space separated, straight into out
+    static void convert(ExpressionLexer tokens, ExpressionEngine.Notation from, OutputSink out) throws IOException {
+        int[] order = reorder(tokens, from);
+        CharSequence input = tokens.input();
+        for (int i = 0; i < order.length; i++) {
+            if (i > 0) {
+                out.append(' ');
+            }
+            out.append(input, tokens.start(order[i]), tokens.end(order[i]));
+        }
+    }
+
+    private static IllegalArgumentException invalid() {
+        return new IllegalArgumentException("Invalid Expression!");
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.BreakIterator;
+import java.text.CharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Reverses text one user-visible character (grapheme cluster) at a time
+// Reversing chars would split surrogate pairs (emoji) and move accents onto the wrong letter,
+// so we let BreakIterator find the cluster boundaries and copy whole clusters.
+// The engine keeps one growable char buffer that is reused between runs, and it is also what the
+// String Reversal mode appends popped characters to - the label is just a view of this buffer.
+final class ReversalEngine {
+    // How much we write to the output at once when reversing a stream
+    private static final int WRITE_CHUNK = 8192;
+
+    private char[] buffer = new char[64];
+    private int length;
+
+    // Forget the current text but keep the buffer
+    void reset() {
+        length = 0;
+    }
+
+    // Add a popped cluster to the end of the reversed text
+    void append(CharSequence cluster) {
+        ensureCapacity(length + cluster.length());
+        for (int i = 0; i < cluster.length(); i++) {
+            buffer[length++] = cluster.charAt(i);
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    // Split text into grapheme clusters, e.g. for the visualizer to push one at a time
+    static String[] clusters(CharSequence text) {
+        ArrayList<String> result = new ArrayList<>();
+        BreakIterator iterator = BreakIterator.getCharacterInstance();
+        iterator.setText(new CharSequenceIterator(text));
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            result.add(text.subSequence(start, end).toString());
+        }
+        return result.toArray(new String[0]);
+    }
+
+    // Read everything from in and write it reversed to out
+    // The input goes into the engine's own buffer, so no intermediate Strings are made.
+    void reverse(Reader in, Writer out) throws IOException {
+        reset();
+        while (true) {
+            ensureCapacity(length + WRITE_CHUNK);
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+
+        char[] reversed = new char[length];
+        reverseInto(new BufferSequence(buffer, length), reversed);
+        for (int offset = 0; offset < length; offset += WRITE_CHUNK) {
+            out.write(reversed, offset, Math.min(WRITE_CHUNK, length - offset));
+        }
+        out.flush();
+        reset();
+    }
+
+    // Copy each cluster of text to its mirrored position in target - one linear pass
+    private static void reverseInto(CharSequence text, char[] target) {
+        int n = text.length();
+        BreakIterator iterator = BreakIterator.getCharacterInstance();
+        iterator.setText(new CharSequenceIterator(text));
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            int to = n - end;
+            for (int i = start; i < end; i++) {
+                target[to++] = text.charAt(i);
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    // Lets BreakIterator walk any CharSequence (including a CharBuffer) without copying it to a String
+    private static final class CharSequenceIterator implements CharacterIterator {
+        private final CharSequence text;
+        private int index;
+
+        CharSequenceIterator(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public char first() {
+            index = 0;
+            return current();
+        }
+
+        @Override
+        public char last() {
+            index = Math.max(0, text.length() - 1);
+            return current();
+        }
+
+        @Override
+        public char current() {
+            return index < text.length() ? text.charAt(index) : DONE;
+        }
+
+        @Override
+        public char next() {
+            if (index < text.length()) {
+                index++;
+            }
+            return current();
+        }
+
+        @Override
+        public char previous() {
+            if (index == 0) {
+                return DONE;
+            }
+            index--;
+            return current();
+        }
+
+        @Override
+        public char setIndex(int position) {
+            if (position < 0 || position > text.length()) {
+                throw new IllegalArgumentException("Invalid index " + position);
+            }
+            index = position;
+            return current();
+        }
+
+        @Override
+        public int getBeginIndex() {
+            return 0;
+        }
+
+        @Override
+        public int getEndIndex() {
+            return text.length();
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Object clone() {
+            CharSequenceIterator copy = new CharSequenceIterator(text);
+            copy.index = index;
+            return copy;
+        }
+    }
+
+    // Read-only view of the first length chars of a buffer
+    private static final class BufferSequence implements CharSequence {
+        private final char[] chars;
+        private final int length;
+
+        BufferSequence(char[] chars, int length) {
+            this.chars = chars;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
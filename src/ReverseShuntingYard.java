@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+// Infix straight to prefix in one pass, without going through postfix or building partial strings
+// Shunting-yard run from right to left: closing brackets open a group and opening brackets close it,
+// and the output comes out as reversed prefix, so we fill the result array from the back.
+// Associativity flips too - going right to left, an equal-precedence operator on the stack is only
+// popped when the incoming one is right-associative (A - B - C stays "- - A B C", A ^ B ^ C
+// becomes "^ A ^ B C"). The result is token indices, so operands of any length are kept as they are.
+final class ReverseShuntingYard {
+    private ReverseShuntingYard() {
+    }
+
+    // Token indices in prefix order (brackets left out); checks the same rules as
+    // ExpressionEngine.isValidInfix and throws IllegalArgumentException("Invalid Infix Expression!")
+    static int[] prefixOrder(ExpressionLexer tokens) {
+        int count = tokens.count();
+        int[] output = new int[count];
+        int written = count;
+        // Waiting operators and closing brackets, as token indices
+        int[] stack = new int[count];
+        int top = 0;
+        boolean expectingOperand = true;
+
+        for (int t = count - 1; t >= 0; t--) {
+            char symbol = tokens.symbol(t);
+            if (OperatorRegistry.isOperator(symbol)) {
+                if (expectingOperand) {
+                    throw invalid();
+                }
+                while (top > 0 && !OperatorRegistry.isCloseBracket(tokens.symbol(stack[top - 1]))
+                        && popsBefore(tokens.symbol(stack[top - 1]), symbol)) {
+                    output[--written] = stack[--top];
+                }
+                stack[top++] = t;
+                expectingOperand = true;
+            } else if (OperatorRegistry.isCloseBracket(symbol)) {
+                if (!expectingOperand) {
+                    throw invalid();
+                }
+                stack[top++] = t;
+            } else if (OperatorRegistry.isOpenBracket(symbol)) {
+                if (expectingOperand) {
+                    throw invalid();
+                }
+                while (top > 0 && !OperatorRegistry.isCloseBracket(tokens.symbol(stack[top - 1]))) {
+                    output[--written] = stack[--top];
+                }
+                if (top == 0 || tokens.symbol(stack[--top]) != OperatorRegistry.partner(symbol)) {
+                    throw invalid();
+                }
+            } else {
+                if (!expectingOperand) {
+                    throw invalid();
+                }
+                output[--written] = t;
+                expectingOperand = false;
+            }
+        }
+        if (expectingOperand) {
+            throw invalid();
+        }
+        while (top > 0) {
+            int t = stack[--top];
+            if (OperatorRegistry.isCloseBracket(tokens.symbol(t))) {
+                throw invalid();
+            }
+            output[--written] = t;
+        }
+        return written == 0 ? output : Arrays.copyOfRange(output, written, count);
+    }
+
+    // Write the prefix form, space separated, straight into out
+    static void convert(ExpressionLexer tokens, OutputSink out) throws IOException {
+        int[] order = prefixOrder(tokens);
+        CharSequence input = tokens.input();
+        for (int i = 0; i < order.length; i++) {
+            if (i > 0) {
+                out.append(' ');
+            }
+            out.append(input, tokens.start(order[i]), tokens.end(order[i]));
+        }
+    }
+
+    // The mirror image of ExpressionEngine.popsBefore for a right-to-left scan
+    private static boolean popsBefore(char top, char incoming) {
+        int topPrecedence = OperatorRegistry.precedence(top);
+        int inPrecedence = OperatorRegistry.precedence(incoming);
+        return topPrecedence > inPrecedence
+                || (topPrecedence == inPrecedence && OperatorRegistry.isRightAssociative(incoming));
+    }
+
+    private static IllegalArgumentException invalid() {
+        return new IllegalArgumentException("Invalid Infix Expression!");
+    }
+}
@@ -3,15 +3,8 @@ import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Stack;
 import java.io.PrintStream;
 import java.io.OutputStream;
-import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Enumeration;
 
@@ -40,6 +33,43 @@ public class StackExpConViz extends JFrame {
         }
     }
 
+    // A box in the stack display that can be faded out without creating new colors
+    private static class StackElementPanel extends JPanel {
+        private float alpha = 1.0f;
+
+        StackElementPanel() {
+            super(new GridBagLayout());
+            // We paint the background ourselves so it can be translucent
+            setOpaque(false);
+        }
+
+        void setAlpha(float alpha) {
+            this.alpha = alpha;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+
+        @Override
+        public void paint(Graphics g) {
+            if (alpha >= 1.0f) {
+                super.paint(g);
+                return;
+            }
+            Graphics2D g2 = (Graphics2D) g.create();
+            try {
+                g2.setComposite(AnimationOverlay.compositeFor(alpha));
+                super.paint(g2);
+            } finally {
+                g2.dispose();
+            }
+        }
+    }
+
     // Stack to store operands during conversion
     private ArrayList<String> stack;
     // UI panel to show the stack visually
@@ -53,16 +83,13 @@ public class StackExpConViz extends JFrame {
     private JLabel resultLabel;
     // Shows the current expression being processed
     private JLabel expressionLabel;
-    // Set of valid operators for the expressions
-    private final Set<String> operators = new HashSet<>(Arrays.asList("+", "-", "*", "/", "^"));
-    // Different types of brackets we support
-    private final Set<String> brackets = new HashSet<>(Arrays.asList("(", ")", "[", "]", "{", "}"));
-    // Operator precedence for infix conversions - higher number = higher precedence
-    private final Map<String, Integer> precedence = new HashMap<>();
     // Array to hold the tokens of the input expression
     private String[] tokens;
     // Keeps track of which token we're currently processing
     private int currentTokenIndex;
+    // Infix being typed, converted as it changes; each keystroke only parses the part it touched
+    private final IncrementalConverter typedToPostfix = new IncrementalConverter(ExpressionEngine.Notation.POSTFIX);
+    private final IncrementalConverter typedToPrefix = new IncrementalConverter(ExpressionEngine.Notation.PREFIX);
     private JButton nextStepButton;
     private JButton autoConvertButton;
     // Whether we're converting to infix notation (true) or not (false)
@@ -90,14 +117,16 @@ public class StackExpConViz extends JFrame {
     private ArrayList<ExpressionHistoryRecord> expressionHistory = new ArrayList<>();
     private JButton historyButton;
     private JPanel expressionBuilderPanel;
+    // Glass pane that draws the moving boxes during animations
+    private AnimationOverlay animationOverlay;
     private JButton infoButton;
     private final String[][] sampleExpressions = {
             {"(A + B) * (C - D)", "AB+CD-*", "*+AB-CD"},          // Expression 1 - correct
             {"A * B + C / D", "AB*CD/+", "+*AB/CD"},              // Expression 2 - correct
-            {"A + B * (C ^ D - E)", "ABCD^E-*+", "+A*B^CD-E"},    // Expression 3 - corrected
+            {"A + B * (C ^ D - E)", "ABCD^E-*+", "+A*B-^CDE"},    // Expression 3 - corrected
             {"(A - B / C) * (D ^ E + F)", "ABC/-DE^F+*", "*-A/BC+^DEF"}, // Expression 4 - correct
             {"A + B * C - D", "ABC*+D-", "-+A*BCD"},              // Expression 5 - correct
-            {"A + B * C / D", "ABC*D/+", "+A*B/CD"},              // Expression 6 - correct
+            {"A + B * C / D", "ABC*D/+", "+A/*BCD"},              // Expression 6 - correct
             {"A - B * C + D", "ABC*-D+", "+-A*BCD"},              // Expression 7 - correct
             {"A + B * C - D / E", "ABC*+DE/-", "-+A*BC/DE"},      // Expression 8 - correct
             {"A + B * C - D", "ABC*+D-", "-+A*BCD"},              // Expression 9 - correct
@@ -107,6 +136,32 @@ public class StackExpConViz extends JFrame {
     };
     // Default background color
     private Color backgroundColor = new Color(245, 245, 245);
+    // Fonts shared by all components, so each size is only created once
+    private static final Font SMALL_FONT = new Font("Segoe UI", Font.PLAIN, 12);
+    private static final Font SMALL_BOLD_FONT = new Font("Segoe UI", Font.BOLD, 12);
+    private static final Font TEXT_FONT = new Font("Segoe UI", Font.PLAIN, 14);
+    private static final Font BUTTON_FONT = new Font("Segoe UI", Font.BOLD, 14);
+    private static final Font HEADING_FONT = new Font("Segoe UI", Font.BOLD, 16);
+    private static final Font ARROW_FONT = new Font("Segoe UI", Font.BOLD, 24);
+    // Popup menus and info text, built the first time they are needed and then reused
+    private final JPopupMenu[] examplesMenus = new JPopupMenu[8];
+    private final String[] educationalInfo = new String[8];
+    private JPopupMenu historyMenu;
+    // Set whenever the history changes, so the history menu knows to rebuild itself
+    private boolean historyMenuStale = true;
+    // For the startup probe, which wants to know when the window first appears
+    private boolean firstPaintDone = false;
+    // Holds the reversed string while String Reversal mode pops characters
+    private final ReversalEngine reversalEngine = new ReversalEngine();
+    private boolean reversalLabelPending = false;
+    // Most tokens the "Remaining" label shows at once
+    private static final int REMAINING_WINDOW = 24;
+    // Shows how often the UI thread has frozen
+    private JLabel metricsLabel;
+    // What the user is doing, for the EDT watchdog (it can't read Swing components while the EDT is stuck)
+    private volatile String watchedMode = "";
+    private volatile int watchedInputLength;
+    private EdtWatchdog edtWatchdog;
 
     public StackExpConViz() {
         stack = new ArrayList<>();
@@ -115,23 +170,21 @@ public class StackExpConViz extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout(15, 15)); // Increased spacing between components
 
-        // Set up the operator precedence levels
-        precedence.put("+", 1);
-        precedence.put("-", 1);
-        precedence.put("*", 2);
-        precedence.put("/", 2);
-        precedence.put("^", 3);
-
         // Set a modern look and feel
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
+        StartupProbe.mark("look and feel set");
 
         // Set background color for the main frame
         setBackground(backgroundColor);
 
+        // One overlay for all animations, reused for the lifetime of the window
+        animationOverlay = new AnimationOverlay();
+        setGlassPane(animationOverlay);
+
         createInputPanel();
         createNotificationPanel();
         createStackPanel();
@@ -142,6 +195,16 @@ public class StackExpConViz extends JFrame {
 
         // Update window title based on selected mode
         updateTitle();
+        StartupProbe.mark("window built");
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!firstPaintDone) {
+            firstPaintDone = true;
+            StartupProbe.startupFinished();
+        }
     }
 
     private void createInputPanel() {
@@ -164,7 +227,7 @@ public class StackExpConViz extends JFrame {
                 "Bracket Balancing"
         };
         conversionModeCombo = new JComboBox<>(modes);
-        conversionModeCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        conversionModeCombo.setFont(TEXT_FONT);
         conversionModeCombo.setPreferredSize(new Dimension(200, 35));
         conversionModeCombo.setBackground(Color.WHITE);
         conversionModeCombo.setBorder(BorderFactory.createCompoundBorder(
@@ -179,11 +242,11 @@ public class StackExpConViz extends JFrame {
         });
 
         JLabel instructionLabel = new JLabel("Enter Expression:");
-        instructionLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        instructionLabel.setFont(BUTTON_FONT);
         instructionLabel.setForeground(new Color(51, 51, 51));
 
         inputField = new JTextField(30);
-        inputField.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        inputField.setFont(TEXT_FONT);
         inputField.setPreferredSize(new Dimension(300, 35));
         inputField.setBorder(BorderFactory.createCompoundBorder(
                 BorderFactory.createLineBorder(new Color(200, 200, 200)),
@@ -220,7 +283,7 @@ public class StackExpConViz extends JFrame {
 
         // Create new buttons with dark blue styling
         JButton startButton = new JButton("Start Conversion");
-        startButton.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        startButton.setFont(BUTTON_FONT);
         startButton.setPreferredSize(new Dimension(140, 35));
         startButton.setBackground(new Color(25, 55, 105)); // Dark navy blue
         startButton.setForeground(Color.BLACK);
@@ -239,7 +302,7 @@ public class StackExpConViz extends JFrame {
         addButtonHoverEffect(startButton);
 
         JButton resetButton = new JButton("Reset");
-        resetButton.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        resetButton.setFont(BUTTON_FONT);
         resetButton.setPreferredSize(new Dimension(100, 35));
         resetButton.setBackground(new Color(25, 55, 105)); // Dark navy blue
         resetButton.setForeground(Color.BLACK);
@@ -259,7 +322,7 @@ public class StackExpConViz extends JFrame {
 
         // Create an examples button
         examplesButton = new JButton("Examples");
-        examplesButton.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        examplesButton.setFont(BUTTON_FONT);
         examplesButton.setPreferredSize(new Dimension(100, 35));
         examplesButton.setBackground(new Color(25, 55, 105));
         examplesButton.setForeground(Color.BLACK);
@@ -279,7 +342,7 @@ public class StackExpConViz extends JFrame {
 
         // Create a history button
         historyButton = new JButton("History");
-        historyButton.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        historyButton.setFont(BUTTON_FONT);
         historyButton.setPreferredSize(new Dimension(100, 35));
         historyButton.setBackground(new Color(25, 55, 105));
         historyButton.setForeground(Color.BLACK);
@@ -299,7 +362,7 @@ public class StackExpConViz extends JFrame {
 
         // Info button for educational content
         infoButton = new JButton("Info");
-        infoButton.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        infoButton.setFont(BUTTON_FONT);
         infoButton.setPreferredSize(new Dimension(80, 35));
         infoButton.setBackground(new Color(34, 139, 34)); // Forest green
         infoButton.setForeground(Color.BLACK);
@@ -339,11 +402,11 @@ public class StackExpConViz extends JFrame {
         expressionArrowPanel.setBackground(backgroundColor);
 
         currentExpressionLabel = new JLabel();
-        currentExpressionLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        currentExpressionLabel.setFont(HEADING_FONT);
         currentExpressionLabel.setForeground(new Color(51, 51, 51));
 
         nextOperationArrow = new JLabel("↑");
-        nextOperationArrow.setFont(new Font("Segoe UI", Font.BOLD, 24));
+        nextOperationArrow.setFont(ARROW_FONT);
         nextOperationArrow.setForeground(new Color(46, 139, 87));
 
         JPanel arrowTextPanel = new JPanel(new BorderLayout());
@@ -385,7 +448,7 @@ public class StackExpConViz extends JFrame {
 
         // Add label explaining the builder
         JLabel builderLabel = new JLabel("Click buttons to build your expression:");
-        builderLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        builderLabel.setFont(SMALL_BOLD_FONT);
         expressionBuilderPanel.add(builderLabel);
 
         // Common variables for all modes
@@ -399,20 +462,22 @@ public class StackExpConViz extends JFrame {
 
         expressionBuilderPanel.add(Box.createHorizontalStrut(10));
 
-        // Operator buttons with tooltips showing precedence
-        String[] operators = {"+", "-", "*", "/", "^"};
-        String[] operatorNames = {"Addition", "Subtraction", "Multiplication", "Division", "Exponentiation"};
-        int[] precedenceValues = {1, 1, 2, 2, 3};
+        // Operator buttons with tooltips showing precedence - one per registered operator
+        String operatorSymbols = OperatorRegistry.symbols();
+        int highestPrecedence = OperatorRegistry.highestPrecedence();
 
-        for (int i = 0; i < operators.length; i++) {
-            JButton button = createExpressionButton(operators[i]);
+        for (int i = 0; i < operatorSymbols.length(); i++) {
+            char operator = operatorSymbols.charAt(i);
+            int precedence = OperatorRegistry.precedence(operator);
+            JButton button = createExpressionButton(String.valueOf(operator));
             button.setForeground(new Color(220, 53, 69)); // Red for operators
 
             // Set educational tooltip with precedence information
-            button.setToolTipText("<html>" + operatorNames[i] + " operator<br>" +
-                    "Precedence: " + precedenceValues[i] +
-                    (precedenceValues[i] == 3 ? " (highest)" :
-                            precedenceValues[i] == 1 ? " (lowest)" : "") + "</html>");
+            button.setToolTipText("<html>" + operatorName(operator) + " operator<br>" +
+                    "Precedence: " + precedence +
+                    (precedence == highestPrecedence ? " (highest)" :
+                            precedence == 1 ? " (lowest)" : "") +
+                    (OperatorRegistry.isRightAssociative(operator) ? "<br>Right-associative" : "") + "</html>");
 
             expressionBuilderPanel.add(button);
         }
@@ -436,12 +501,12 @@ public class StackExpConViz extends JFrame {
         expressionBuilderPanel.add(Box.createHorizontalStrut(10));
 
         JButton spaceButton = new JButton("Space");
-        spaceButton.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        spaceButton.setFont(SMALL_FONT);
         spaceButton.addActionListener(e -> inputField.setText(inputField.getText() + " "));
         expressionBuilderPanel.add(spaceButton);
 
         JButton backspaceButton = new JButton("Backspace");
-        backspaceButton.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        backspaceButton.setFont(SMALL_FONT);
         backspaceButton.addActionListener(e -> {
             String text = inputField.getText();
             if (!text.isEmpty()) {
@@ -451,7 +516,7 @@ public class StackExpConViz extends JFrame {
         expressionBuilderPanel.add(backspaceButton);
 
         JButton clearButton = new JButton("Clear");
-        clearButton.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        clearButton.setFont(SMALL_FONT);
         clearButton.addActionListener(e -> inputField.setText(""));
         expressionBuilderPanel.add(clearButton);
 
@@ -459,10 +524,28 @@ public class StackExpConViz extends JFrame {
         expressionBuilderPanel.repaint();
     }
 
+    // Name shown in the operator tooltips
+    private static String operatorName(char operator) {
+        switch (operator) {
+            case '+':
+                return "Addition";
+            case '-':
+                return "Subtraction";
+            case '*':
+                return "Multiplication";
+            case '/':
+                return "Division";
+            case '^':
+                return "Exponentiation";
+            default:
+                return "Custom";
+        }
+    }
+
     // Helper method to create a button for the expression builder
     private JButton createExpressionButton(String text) {
         JButton button = new JButton(text);
-        button.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        button.setFont(BUTTON_FONT);
         button.setPreferredSize(new Dimension(45, 35));
         button.setMargin(new Insets(2, 2, 2, 2));
 
@@ -514,7 +597,7 @@ public class StackExpConViz extends JFrame {
         // Add credit label with improved styling
         JLabel creditLabel = new JLabel("Made by Abdullah Irshad ©");
         creditLabel.setForeground(new Color(46, 139, 87));
-        creditLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        creditLabel.setFont(HEADING_FONT);
         JPanel creditPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         creditPanel.setBackground(backgroundColor);
         creditPanel.add(creditLabel);
@@ -537,10 +620,11 @@ public class StackExpConViz extends JFrame {
         resultLabel = new JLabel("Final Result: ");
         messageLabel = new JLabel("");
         messageLabel.setForeground(new Color(220, 53, 69)); // Bootstrap danger red
+        metricsLabel = new JLabel("UI Stalls: 0");
 
         // Style all labels
         for (JLabel label : new JLabel[]{expressionLabel, topLabel, resultLabel, messageLabel}) {
-            label.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+            label.setFont(TEXT_FONT);
             label.setForeground(new Color(51, 51, 51));
         }
 
@@ -552,6 +636,11 @@ public class StackExpConViz extends JFrame {
         infoPanel.add(resultLabel);
         infoPanel.add(Box.createVerticalStrut(15));
         infoPanel.add(messageLabel);
+        infoPanel.add(Box.createVerticalGlue());
+        infoPanel.add(metricsLabel);
+
+        metricsLabel.setFont(SMALL_FONT);
+        metricsLabel.setForeground(new Color(108, 117, 125)); // Muted grey
 
         add(infoPanel, BorderLayout.EAST);
     }
@@ -594,7 +683,7 @@ public class StackExpConViz extends JFrame {
         sliderPanel.setBackground(backgroundColor);
 
         JLabel sliderLabel = new JLabel("Animation Speed:");
-        sliderLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        sliderLabel.setFont(BUTTON_FONT);
         sliderLabel.setForeground(new Color(51, 51, 51));
 
         animationSpeedSlider = new JSlider(JSlider.HORIZONTAL, 1, 10, 5);
@@ -651,7 +740,7 @@ public class StackExpConViz extends JFrame {
         notificationArea.setContentType("text/html");
         notificationArea.setEditable(false);
         notificationArea.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, true);
-        notificationArea.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        notificationArea.setFont(TEXT_FONT);
         notificationArea.setBackground(new Color(248, 248, 248));
         notificationArea.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200)));
 
@@ -669,110 +758,63 @@ public class StackExpConViz extends JFrame {
             return tokenizeInfixExpression(input);
         }
 
-        // First, remove all brackets from the input for prefix/postfix expressions
-        String cleanedInput = input;
-        for (String bracket : brackets) {
-            cleanedInput = cleanedInput.replace(bracket, "");
-        }
-
-        // Now tokenize the cleaned input
-        ArrayList<String> tokenList = new ArrayList<>();
-
-        // For prefix and postfix inputs, split by whitespace first if it contains spaces
-        if (cleanedInput.contains(" ")) {
-            String[] spaceSplit = cleanedInput.trim().split("\\s+");
-            for (String token : spaceSplit) {
-                if (!token.isEmpty()) {
-                    tokenList.add(token);
-                }
-            }
-        } else {
-            // If no spaces, tokenize character by character (for inputs like "+AB" or "AB+")
-            for (int i = 0; i < cleanedInput.length(); i++) {
-                char c = cleanedInput.charAt(i);
-
-                // Skip spaces
-                if (Character.isWhitespace(c)) {
-                    continue;
-                }
-
-                String token = String.valueOf(c);
-
-                if (operators.contains(token)) {
-                    // If it's an operator, add it as a separate token
-                    tokenList.add(token);
-                } else {
-                    // Otherwise it's an operand (like A, B, etc.)
-                    tokenList.add(token);
-                }
-            }
-        }
-
-        // Print the tokens for debugging - helps me see what's happening
-        StringBuilder debugMsg = new StringBuilder("Tokens: ");
-        for (String token : tokenList) {
-            debugMsg.append(token).append(" ");
-        }
-        System.out.println(debugMsg.toString());
+        ConversionEvents.LexEvent event = ConversionEvents.startLex();
 
-        return tokenList.toArray(new String[0]);
+        // Brackets are dropped, then split by spaces (or per character for inputs like "+AB")
+        String[] result = ExpressionEngine.tokenizePrefixPostfix(input);
+        commitLexEvent(event, "tokenizeExpression", input, result);
+        return result;
     }
 
     private String[] tokenizeInfixExpression(String input) {
-        ArrayList<String> tokenList = new ArrayList<>();
-        StringBuilder currentToken = new StringBuilder();
+        ConversionEvents.LexEvent event = ConversionEvents.startLex();
 
-        System.out.println("Debug: Starting to tokenize infix expression: " + input);
-
-        // For infix input, we need to handle multi-character tokens
-        // and keep track of brackets and operators
-        for (int i = 0; i < input.length(); i++) {
-            char c = input.charAt(i);
-            String charStr = String.valueOf(c);
-
-            System.out.println("Debug: Processing character: " + charStr);
-
-            // If it's a space, finish the current token and skip the space
-            if (Character.isWhitespace(c)) {
-                if (currentToken.length() > 0) {
-                    tokenList.add(currentToken.toString());
-                    System.out.println("Debug: Added token from space: " + currentToken.toString());
-                    currentToken.setLength(0);
-                }
-                continue;
-            }
+        // Operators and brackets are their own tokens, operands can be several characters
+        String[] result = ExpressionEngine.tokenizeInfix(input);
+        commitLexEvent(event, "tokenizeInfixExpression", input, result);
+        return result;
+    }
 
-            // Special handling for operators and brackets
-            if (operators.contains(charStr) || brackets.contains(charStr)) {
-                // If we have a pending token, add it first
-                if (currentToken.length() > 0) {
-                    tokenList.add(currentToken.toString());
-                    System.out.println("Debug: Added pending token: " + currentToken.toString());
-                    currentToken.setLength(0);
-                }
-                // Add the operator or bracket as its own token
-                tokenList.add(charStr);
-                System.out.println("Debug: Added operator/bracket: " + charStr);
-            } else {
-                // For operands (like variables or numbers), keep building the token
-                currentToken.append(c);
-            }
+    // Helpers to fill in the JFR events - the fields are only set when a recording wants the event
+    // (event is null when Flight Recorder isn't running at all)
+    private void commitLexEvent(ConversionEvents.LexEvent event, String tokenizer, String input, String[] result) {
+        if (event != null && event.shouldCommit()) {
+            event.mode = currentModeName();
+            event.tokenizer = tokenizer;
+            event.inputLength = input.length();
+            event.tokenCount = result.length;
+            event.commit();
         }
+    }
 
-        // Add any remaining token (in case there's no space at the end)
-        if (currentToken.length() > 0) {
-            tokenList.add(currentToken.toString());
-            System.out.println("Debug: Added final token: " + currentToken.toString());
+    private void commitValidateEvent(ConversionEvents.ValidateEvent event, String validator, String[] tokens, boolean valid) {
+        if (event != null && event.shouldCommit()) {
+            event.mode = currentModeName();
+            event.validator = validator;
+            event.tokenCount = tokens == null ? 0 : tokens.length;
+            event.valid = valid;
+            event.commit();
         }
+    }
 
-        // Print tokens for debugging
-        StringBuilder debugMsg = new StringBuilder("Debug: Final tokens: ");
-        for (String token : tokenList) {
-            debugMsg.append(token).append(" ");
+    private void commitConvertEvent(ConversionEvents.ConvertEvent event, String converter, String[] input, String[] result) {
+        if (event != null && event.shouldCommit()) {
+            event.mode = currentModeName();
+            event.converter = converter;
+            event.tokenCount = input.length;
+            event.outputTokenCount = result.length;
+            event.commit();
         }
-        System.out.println(debugMsg.toString());
+    }
+
+    // Records one animation timer tick for Flight Recorder
+    private void recordTick(String timer, int step) {
+        ConversionEvents.tick(timer, step, currentModeName(), tokens == null ? 0 : tokens.length);
+    }
 
-        return tokenList.toArray(new String[0]);
+    // Name of the selected conversion mode, used to tag the JFR events
+    private String currentModeName() {
+        return (String) conversionModeCombo.getSelectedItem();
     }
 
     private boolean isValidExpression(String[] tokens) {
@@ -791,466 +833,70 @@ public class StackExpConViz extends JFrame {
     }
 
     private boolean isValidInfixExpression(String[] tokens) {
-        if (tokens == null || tokens.length == 0) {
-            System.out.println("Debug: Tokens array is null or empty");
-            return false;
-        }
-
-        System.out.println("Debug: Starting validation of infix expression");
-        System.out.println("Debug: Tokens to validate:");
-        for (String token : tokens) {
-            System.out.print(token + " ");
-        }
-        System.out.println();
-
-        // First, check if all brackets are balanced
-        Stack<String> bracketStack = new Stack<>();
-        for (String token : tokens) {
-            if (token.equals("(") || token.equals("[") || token.equals("{")) {
-                // Push opening brackets onto stack
-                bracketStack.push(token);
-                System.out.println("Debug: Pushed opening bracket: " + token);
-            } else if (token.equals(")") || token.equals("]") || token.equals("}")) {
-                // For closing brackets, check if they match with the last opening bracket
-                if (bracketStack.isEmpty()) {
-                    System.out.println("Debug: Invalid - extra closing bracket: " + token);
-                    return false;
-                }
-
-                String openBracket = bracketStack.pop();
-                if ((token.equals(")") && !openBracket.equals("(")) ||
-                        (token.equals("]") && !openBracket.equals("[")) ||
-                        (token.equals("}") && !openBracket.equals("{"))) {
-                    System.out.println("Debug: Invalid - mismatched brackets: " + openBracket + " and " + token);
-                    return false;
-                }
-                System.out.println("Debug: Matched brackets: " + openBracket + " and " + token);
-            }
-        }
-
-        // If there are still brackets on the stack, we're missing closing brackets
-        if (!bracketStack.isEmpty()) {
-            System.out.println("Debug: Invalid - missing closing brackets");
-            return false;
-        }
-
-        // Now check for proper operator-operand sequence
-        boolean expectingOperand = true; // Start expecting an operand
-        int openBrackets = 0;
-
-        for (int i = 0; i < tokens.length; i++) {
-            String token = tokens[i];
-            System.out.println("Debug: Processing token " + i + ": " + token + ", expectingOperand=" + expectingOperand);
-
-            if (brackets.contains(token)) {
-                if (token.equals("(") || token.equals("[") || token.equals("{")) {
-                    openBrackets++;
-                    expectingOperand = true; // After an open bracket, expect an operand
-                    System.out.println("Debug: Found opening bracket, now expecting operand");
-                } else {
-                    openBrackets--;
-                    expectingOperand = false; // After a closing bracket, expect an operator
-                    System.out.println("Debug: Found closing bracket, now expecting operator");
-                }
-            } else if (operators.contains(token)) {
-                if (expectingOperand) {
-                    // If we expect an operand but got an operator, it's invalid
-                    System.out.println("Debug: Invalid - expected operand but got operator: " + token);
-                    return false;
-                }
-                expectingOperand = true; // After an operator, expect an operand
-                System.out.println("Debug: Found operator, now expecting operand");
-            } else {
-                // This is an operand
-                if (!expectingOperand && i > 0) {
-                    // If we expect an operator but got an operand, it's invalid
-                    System.out.println("Debug: Invalid - expected operator but got operand: " + token);
-                    return false;
-                }
-                expectingOperand = false; // After an operand, expect an operator
-                System.out.println("Debug: Found operand, now expecting operator");
-            }
-        }
-
-        // The expression should end with an operand or closing bracket
-        if (expectingOperand) {
-            System.out.println("Debug: Invalid - expression ends with an operator");
-            return false;
-        }
-
-        // Ensure all brackets are balanced
-        if (openBrackets != 0) {
-            System.out.println("Debug: Invalid - unbalanced brackets (openBrackets=" + openBrackets + ")");
-            return false;
-        }
+        ConversionEvents.ValidateEvent event = ConversionEvents.startValidate();
+        boolean valid = checkInfixTokens(tokens);
+        commitValidateEvent(event, "isValidInfixExpression", tokens, valid);
+        return valid;
+    }
 
-        System.out.println("Debug: Expression is valid!");
-        return true; // If we passed all checks, the expression is valid
+    private boolean checkInfixTokens(String[] tokens) {
+        return ExpressionEngine.isValidInfix(tokens);
     }
 
     private boolean isValidPostfixExpression(String[] tokens) {
-        if (tokens == null || tokens.length == 0) {
-            return false;
-        }
-
-        // Special case: simple expressions like "AB+" or "A B +" (two operands, one operator)
-        if (tokens.length == 3 && !isOperator(tokens[0]) && !isOperator(tokens[1]) && isOperator(tokens[2])) {
-            return true;
-        }
-
-        // For valid postfix expressions, we need:
-        // 1. At least one operator
-        // 2. The number of operands = number of operators + 1
-        int operatorCount = 0;
-        int operandCount = 0;
-
-        for (String token : tokens) {
-            if (isOperator(token)) {
-                operatorCount++;
-            } else {
-                operandCount++;
-            }
-        }
-
-        // Check the operand-operator balance
-        if (operandCount != operatorCount + 1) {
-            System.out.println("Invalid: operands=" + operandCount + ", operators=" + operatorCount);
-            return false;
-        }
-
-        // Now simulate evaluating the expression with a stack
-        // This checks that operators have enough operands to work with
-        ArrayList<String> validationStack = new ArrayList<>();
-
-        for (String token : tokens) {
-            if (isOperator(token)) {
-                // Each operator needs two operands
-                if (validationStack.size() < 2) {
-                    System.out.println("Invalid structure: not enough operands for operator " + token);
-                    return false;
-                }
-
-                // Pop two operands and push a dummy result
-                validationStack.remove(validationStack.size() - 1);
-                validationStack.remove(validationStack.size() - 1);
-                validationStack.add("result"); // Just a placeholder
-            } else {
-                // Push operand onto stack
-                validationStack.add(token);
-            }
-        }
+        ConversionEvents.ValidateEvent event = ConversionEvents.startValidate();
+        boolean valid = checkPostfixTokens(tokens);
+        commitValidateEvent(event, "isValidPostfixExpression", tokens, valid);
+        return valid;
+    }
 
-        // A valid postfix expression should leave exactly one result on the stack
-        return validationStack.size() == 1;
+    // Same check as Convert and /validate, so the field never turns green for something that won't convert
+    private boolean checkPostfixTokens(String[] tokens) {
+        return ArityValidator.check(ExpressionLexer.ofTokens(tokens), ExpressionEngine.Notation.POSTFIX).isValid();
     }
 
     private boolean isValidPrefixExpression(String[] tokens) {
-        if (tokens == null || tokens.length == 0) {
-            return false;
-        }
-
-        // Special case: unary operator (e.g., "-A")
-        if (tokens.length == 2 && isOperator(tokens[0]) && !isOperator(tokens[1])) {
-            return true;
-        }
-
-        // Special case: one operator and two operands (e.g., "+AB" or "+ A B")
-        if (tokens.length == 3 && isOperator(tokens[0]) && !isOperator(tokens[1]) && !isOperator(tokens[2])) {
-            return true;
-        }
-
-        // Similar to postfix, check operand-operator balance
-        int operatorCount = 0;
-        int operandCount = 0;
-
-        for (String token : tokens) {
-            if (isOperator(token)) {
-                operatorCount++;
-            } else {
-                operandCount++;
-            }
-        }
-
-        // Same rule: operands = operators + 1
-        if (operandCount != operatorCount + 1) {
-            System.out.println("Invalid: operands=" + operandCount + ", operators=" + operatorCount);
-            return false;
-        }
-
-        // For prefix expressions, we evaluate from right to left
-        // So we need to do the validation differently
-        int count = 0;
-
-        // Traverse from right to left for prefix expression
-        for (int i = tokens.length - 1; i >= 0; i--) {
-            String token = tokens[i];
-            if (isOperator(token)) {
-                // For each operator, we need two operands
-                count--;
-            } else {
-                // For each operand, increment count
-                count++;
-            }
-
-            // If count ever goes below 1, we have invalid expression
-            // (except at the very end when processing the first operator)
-            if (count < 1 && i > 0) {
-                System.out.println("Invalid structure at position " + i);
-                return false;
-            }
-        }
+        ConversionEvents.ValidateEvent event = ConversionEvents.startValidate();
+        boolean valid = checkPrefixTokens(tokens);
+        commitValidateEvent(event, "isValidPrefixExpression", tokens, valid);
+        return valid;
+    }
 
-        // Final count should be 1 for a valid expression (one final result)
-        return count == 1;
+    private boolean checkPrefixTokens(String[] tokens) {
+        return ArityValidator.check(ExpressionLexer.ofTokens(tokens), ExpressionEngine.Notation.PREFIX).isValid();
     }
 
     private String[] convertInfixToPostfix(String[] infixTokens) {
-        System.out.println("Debug: Starting infix to postfix conversion for: " + Arrays.toString(infixTokens));
-
-        ArrayList<String> postfix = new ArrayList<>();
-        Stack<String> stack = new Stack<>();
-
-        for (String token : infixTokens) {
-            System.out.println("Debug: Processing token: " + token);
-
-            if (isOperator(token)) {
-                while (!stack.isEmpty() && !isOpenBracket(stack.peek()) &&
-                        precedence.getOrDefault(stack.peek(), 0) >= precedence.getOrDefault(token, 0)) {
-                    String popped = stack.pop();
-                    postfix.add(popped);
-                    System.out.println("Debug: Popped operator with higher/equal precedence: " + popped);
-                }
-                stack.push(token);
-                System.out.println("Debug: Pushed operator to stack: " + token);
-            }
-            else if (isOpenBracket(token)) {
-                stack.push(token);
-                System.out.println("Debug: Pushed open bracket to stack: " + token);
-            }
-            else if (isCloseBracket(token)) {
-                while (!stack.isEmpty() && !isOpenBracket(stack.peek())) {
-                    String popped = stack.pop();
-                    postfix.add(popped);
-                    System.out.println("Debug: Popped operator until matching bracket: " + popped);
-                }
-                if (!stack.isEmpty() && isOpenBracket(stack.peek())) {
-                    stack.pop(); // Discard the open bracket
-                    System.out.println("Debug: Discarded opening bracket");
-                }
-            }
-            else {
-                // Operand
-                postfix.add(token);
-                System.out.println("Debug: Added operand to postfix: " + token);
-            }
-
-            System.out.println("Debug: Current postfix: " + postfix);
-            System.out.println("Debug: Current stack: " + stack);
-        }
-
-        // Pop any remaining operators from the stack
-        while (!stack.isEmpty()) {
-            if (isOpenBracket(stack.peek())) {
-                String discarded = stack.pop(); // Discard any remaining open brackets
-                System.out.println("Debug: Discarded unclosed bracket: " + discarded);
-            } else {
-                String popped = stack.pop();
-                postfix.add(popped);
-                System.out.println("Debug: Popped remaining operator: " + popped);
-            }
-        }
-
-        System.out.println("Debug: Final postfix expression: " + postfix);
-
-        // For postfix, we just need to combine the tokens to a single array
-        String[] result = postfix.toArray(new String[0]);
-
-        // Individual postfix tokens
-        ArrayList<String> postfixTokens = new ArrayList<>();
-        for (String token : result) {
-            // If it's a multi-character token, we need to split it
-            // But for our purposes, we can just add single characters
-            if (token.length() > 1) {
-                for (int i = 0; i < token.length(); i++) {
-                    postfixTokens.add(String.valueOf(token.charAt(i)));
-                }
-            } else {
-                postfixTokens.add(token);
-            }
-        }
-
-        System.out.println("Debug: Final postfix tokens: " + postfixTokens);
+        ConversionEvents.ConvertEvent event = ConversionEvents.startConvert();
+        String[] result = convertInfixToPostfixTokens(infixTokens);
+        commitConvertEvent(event, "convertInfixToPostfix", infixTokens, result);
+        return result;
+    }
 
-        return postfixTokens.toArray(new String[0]);
+    private String[] convertInfixToPostfixTokens(String[] infixTokens) {
+        return ExpressionEngine.infixToPostfix(infixTokens);
     }
 
     private String[] convertInfixToPrefix(String[] infixTokens) {
-        System.out.println("Debug: Starting infix to prefix conversion for: " + Arrays.toString(infixTokens));
-
-        // APPROACH: Convert infix to postfix first, then reverse the result
-        // First, let's create a copy of the infixTokens array
-        ArrayList<String> strippedInfixTokens = new ArrayList<>();
-
-        // Copy and filter out brackets first for clearer debug output
-        for (String token : infixTokens) {
-            strippedInfixTokens.add(token);
-        }
-
-        System.out.println("Debug: Initial infix tokens: " + strippedInfixTokens);
-
-        // 1. Convert infix to postfix
-        ArrayList<String> postfix = new ArrayList<>();
-        Stack<String> stack = new Stack<>();
-
-        for (String token : infixTokens) {
-            System.out.println("Debug: Processing token for postfix conversion: " + token);
-
-            if (isOperator(token)) {
-                while (!stack.isEmpty() && !isOpenBracket(stack.peek()) &&
-                        precedence.getOrDefault(stack.peek(), 0) >= precedence.getOrDefault(token, 0)) {
-                    postfix.add(stack.pop());
-                }
-                stack.push(token);
-                System.out.println("Debug: Pushed operator to stack: " + token);
-            }
-            else if (isOpenBracket(token)) {
-                stack.push(token);
-                System.out.println("Debug: Pushed open bracket to stack: " + token);
-            }
-            else if (isCloseBracket(token)) {
-                while (!stack.isEmpty() && !isOpenBracket(stack.peek())) {
-                    postfix.add(stack.pop());
-                }
-                if (!stack.isEmpty() && isOpenBracket(stack.peek())) {
-                    stack.pop(); // Remove the open bracket
-                }
-                System.out.println("Debug: Processed closing bracket");
-            }
-            else {
-                // Operand
-                postfix.add(token);
-                System.out.println("Debug: Added operand to postfix: " + token);
-            }
-
-            System.out.println("Debug: Current postfix: " + postfix);
-            System.out.println("Debug: Current stack: " + stack);
-        }
-
-        // Pop any remaining operators from the stack
-        while (!stack.isEmpty()) {
-            if (isOpenBracket(stack.peek())) {
-                stack.pop(); // Discard any remaining open brackets
-            } else {
-                postfix.add(stack.pop());
-            }
-        }
-
-        System.out.println("Debug: Final postfix: " + postfix);
-
-        // 2. Convert postfix to prefix
-        Stack<String> conversionStack = new Stack<>();
-        for (String token : postfix) {
-            if (isOperator(token)) {
-                // For operators, pop two operands
-                if (conversionStack.size() < 2) {
-                    System.out.println("Debug: Error - not enough operands for operator " + token);
-                    return new String[]{"Error"};
-                }
-                String operand2 = conversionStack.pop();
-                String operand1 = conversionStack.pop();
-
-                // In prefix, the operator comes first, followed by operands
-                String prefixExpr = token + operand1 + operand2;
-                conversionStack.push(prefixExpr);
-                System.out.println("Debug: Created prefix expression: " + prefixExpr);
-            } else {
-                // For operands, just push to stack
-                conversionStack.push(token);
-                System.out.println("Debug: Pushed operand to conversion stack: " + token);
-            }
-
-            System.out.println("Debug: Current conversion stack: " + conversionStack);
-        }
-
-        // The final result should be on top of the stack
-        if (conversionStack.isEmpty()) {
-            System.out.println("Debug: Error - empty conversion stack");
-            return new String[]{"Error"};
-        }
-
-        String prefixExpression = conversionStack.pop();
-        System.out.println("Debug: Final prefix expression: " + prefixExpression);
-
-        // Convert the single prefix expression string into individual tokens
-        ArrayList<String> prefixTokens = new ArrayList<>();
-        for (int i = 0; i < prefixExpression.length(); i++) {
-            prefixTokens.add(String.valueOf(prefixExpression.charAt(i)));
-        }
-
-        System.out.println("Debug: Final prefix tokens: " + prefixTokens);
-
-        return prefixTokens.toArray(new String[0]);
+        ConversionEvents.ConvertEvent event = ConversionEvents.startConvert();
+        String[] result = convertInfixToPrefixTokens(infixTokens);
+        commitConvertEvent(event, "convertInfixToPrefix", infixTokens, result);
+        return result;
     }
 
-    // Helper method for converting infix to postfix (used by convertInfixToPostfix)
-    private String[] convertToPostfix(String[] infixTokens) {
-        ArrayList<String> postfixOutput = new ArrayList<>();
-        Stack<String> operatorStack = new Stack<>();
-
-        // Loop through each token in the infix expression
-        for (String token : infixTokens) {
-            if (isOperator(token)) {
-                // For operators, we need to handle precedence
-                // Pop operators with higher/equal precedence before pushing this one
-                while (!operatorStack.isEmpty() &&
-                        !isOpenBracket(operatorStack.peek()) &&
-                        hasHigherPrecedence(operatorStack.peek(), token)) {
-                    postfixOutput.add(operatorStack.pop());
-                }
-                operatorStack.push(token);
-            } else if (isOpenBracket(token)) {
-                // For open brackets, just push to stack
-                operatorStack.push(token);
-            } else if (isCloseBracket(token)) {
-                // For closing brackets, pop operators until matching open bracket
-                while (!operatorStack.isEmpty() && !isOpenBracket(operatorStack.peek())) {
-                    postfixOutput.add(operatorStack.pop());
-                }
-                if (!operatorStack.isEmpty() && isOpenBracket(operatorStack.peek())) {
-                    operatorStack.pop(); // Discard the open bracket
-                }
-            } else {
-                // For operands, add directly to output
-                postfixOutput.add(token);
-            }
-        }
-
-        // Pop any remaining operators from the stack
-        while (!operatorStack.isEmpty()) {
-            postfixOutput.add(operatorStack.pop());
-        }
-
-        return postfixOutput.toArray(new String[0]);
+    private String[] convertInfixToPrefixTokens(String[] infixTokens) {
+        // One right-to-left pass straight to prefix tokens
+        return ExpressionEngine.infixToPrefix(infixTokens);
     }
 
     // Helper method to check if a token is an opening bracket
     private boolean isOpenBracket(String token) {
-        return token.equals("(") || token.equals("[") || token.equals("{");
+        return ExpressionEngine.isOpenBracket(token);
     }
 
     // Helper method to check if a token is a closing bracket
     private boolean isCloseBracket(String token) {
-        return token.equals(")") || token.equals("]") || token.equals("}");
-    }
-
-    private boolean hasHigherPrecedence(String op1, String op2) {
-        // Use >= for left-associative operators (standard behavior for most operators)
-        // For expressions like a+b+c, we want (a+b)+c, not a+(b+c)
-        int p1 = precedence.getOrDefault(op1, 0);
-        int p2 = precedence.getOrDefault(op2, 0);
-        System.out.println("Debug: Comparing precedence of " + op1 + "(" + p1 + ") and " + op2 + "(" + p2 + ")");
-
-        return p1 >= p2;
+        return ExpressionEngine.isCloseBracket(token);
     }
 
     private void startConversion() {
@@ -1258,6 +904,7 @@ public class StackExpConViz extends JFrame {
         resetOperation();
 
         String input = inputField.getText().trim();
+        updateWatchdogContext(input);
         if (input.isEmpty()) {
             showMessage("Please enter an expression!");
             return;
@@ -1282,11 +929,9 @@ public class StackExpConViz extends JFrame {
 
         // Handle string reversal mode
         if (conversionModeCombo.getSelectedIndex() == 6) {
-            // For string reversal, each character is a token
-            tokens = new String[input.length()];
-            for (int i = 0; i < input.length(); i++) {
-                tokens[i] = String.valueOf(input.charAt(i));
-            }
+            // For string reversal, each visible character is a token
+            // (emoji and accented letters can be more than one Java char)
+            tokens = ReversalEngine.clusters(input);
             currentTokenIndex = 0;
             isPostfixInput = true; // We'll process from left to right
             expressionArrowPanel.setVisible(true);
@@ -1344,7 +989,7 @@ public class StackExpConViz extends JFrame {
             // Filter out any brackets from the result for cleaner processing
             ArrayList<String> filteredTokens = new ArrayList<>();
             for (String token : tokens) {
-                if (!brackets.contains(token)) {
+                if (!ExpressionEngine.isBracket(token)) {
                     filteredTokens.add(token);
                 }
             }
@@ -1383,29 +1028,13 @@ public class StackExpConViz extends JFrame {
     // Updates the display to show which token we're processing next
     private void updateExpressionAndArrow() {
         if (currentTokenIndex >= 0 && currentTokenIndex < tokens.length) {
-            StringBuilder expr = new StringBuilder();
-
             if (isPostfixInput) {
-                // For postfix, show tokens from current to end
-                for (int i = currentTokenIndex; i < tokens.length; i++) {
-                    expr.append(tokens[i]);
-                    if (i < tokens.length - 1) expr.append(" ");
-                }
-                currentExpressionLabel.setText("Remaining: " + expr.toString());
+                // For postfix, the remaining tokens run from current to the end
+                currentExpressionLabel.setText(formatRemainingWindow(currentTokenIndex, tokens.length - 1, true));
             } else {
-                // For prefix, show tokens from current to beginning
-                // We need to show them in the order they will be processed
-                ArrayList<String> remainingTokens = new ArrayList<>();
-                for (int i = currentTokenIndex; i >= 0; i--) {
-                    remainingTokens.add(tokens[i]);
-                }
-                // Reverse the list to show in processing order
-                Collections.reverse(remainingTokens);
-                for (int i = 0; i < remainingTokens.size(); i++) {
-                    expr.append(remainingTokens.get(i));
-                    if (i < remainingTokens.size() - 1) expr.append(" ");
-                }
-                currentExpressionLabel.setText("Remaining: " + expr.toString());
+                // For prefix, the remaining tokens run from the beginning up to current
+                // (they get processed right to left, so current is the last one shown)
+                currentExpressionLabel.setText(formatRemainingWindow(0, currentTokenIndex, false));
             }
 
             // Add a tooltip to the arrow to explain what's going to happen
@@ -1420,6 +1049,41 @@ public class StackExpConViz extends JFrame {
         }
     }
 
+    // Refresh the reversed string label once per frame, no matter how many pops happened in between
+    private void scheduleReversalLabelUpdate() {
+        if (reversalLabelPending) {
+            return;
+        }
+        reversalLabelPending = true;
+        SwingUtilities.invokeLater(() -> {
+            reversalLabelPending = false;
+            resultLabel.setText("Reversed String: " + reversalEngine);
+        });
+    }
+
+    // Build the "Remaining" text from at most REMAINING_WINDOW tokens of tokens[first..last]
+    // The window sits next to the current token, the rest is summarised with an ellipsis and a count.
+    // Reading straight from the token array keeps each step cheap no matter how long the expression is.
+    private String formatRemainingWindow(int first, int last, boolean currentIsFirst) {
+        int remaining = last - first + 1;
+        int shown = Math.min(remaining, REMAINING_WINDOW);
+        int hidden = remaining - shown;
+        int from = currentIsFirst ? first : last - shown + 1;
+
+        StringBuilder expr = new StringBuilder("Remaining: ");
+        if (hidden > 0 && !currentIsFirst) {
+            expr.append("(").append(hidden).append(" more) … ");
+        }
+        for (int i = from; i < from + shown; i++) {
+            expr.append(tokens[i]);
+            if (i < from + shown - 1) expr.append(" ");
+        }
+        if (hidden > 0 && currentIsFirst) {
+            expr.append(" … (").append(hidden).append(" more)");
+        }
+        return expr.toString();
+    }
+
     // Process the next token in the expression
     private void processNextStep() {
         if (isAnimating) {
@@ -1489,6 +1153,8 @@ public class StackExpConViz extends JFrame {
                 // All characters processed, now pop them to get reversed string
                 if (stack.isEmpty()) {
                     showMessage("String Reversal Complete!");
+                    // Print the finished reversed string to console
+                    System.out.println("String Reversal: " + reversalEngine);
                     disableControls();
                     return;
                 }
@@ -1498,19 +1164,9 @@ public class StackExpConViz extends JFrame {
                 updateStackVisual();
                 addNotification("Popped character: " + poppedChar);
 
-                // Build the reversed string gradually
-                StringBuilder reversed = new StringBuilder();
-                // Get the current reversed string from the result label
-                String currentReversed = resultLabel.getText().replace("Reversed String: ", "");
-                if (currentReversed.isEmpty()) {
-                    reversed.append(poppedChar);
-                } else {
-                    reversed.append(currentReversed).append(poppedChar);
-                }
-                resultLabel.setText("Reversed String: " + reversed.toString());
-
-                // Print the current state of the reversed string to console
-                System.out.println("String Reversal: " + reversed.toString());
+                // Build the reversed string gradually in the engine's buffer
+                reversalEngine.append(poppedChar);
+                scheduleReversalLabelUpdate();
                 return;
             }
 
@@ -1574,8 +1230,11 @@ public class StackExpConViz extends JFrame {
 
         // Create a timer that processes one token
         Timer timer = new Timer(animationSpeed, new ActionListener() {
+            private int tick = 0;
+
             @Override
             public void actionPerformed(ActionEvent e) {
+                recordTick("autoConvert", ++tick);
                 boolean hasMoreTokens = isPostfixInput ?
                         currentTokenIndex < tokens.length :
                         currentTokenIndex >= 0;
@@ -1595,14 +1254,9 @@ public class StackExpConViz extends JFrame {
 
     // Clean up any leftover animation components
     private void cleanup() {
-        JLayeredPane layeredPane = getLayeredPane();
-        Component[] components = layeredPane.getComponents();
-        for (Component comp : components) {
-            if (comp instanceof JLabel && comp.getBackground().equals(new Color(46, 139, 87))) {
-                layeredPane.remove(comp);
-            }
+        if (!isAnimating) {
+            animationOverlay.releaseAll();
         }
-        layeredPane.repaint();
     }
 
     // Show error messages or status messages temporarily
@@ -1627,12 +1281,22 @@ public class StackExpConViz extends JFrame {
             String result = stack.get(0);
             resultLabel.setText("Final Result: " + result);
             resultLabel.setForeground(new Color(40, 167, 69)); // Green for success
-            showMessage("Conversion Complete!");
 
             // Add to history
             String input = inputField.getText().trim();
+            AllNotations all = allNotations(input);
+            resultLabel.setToolTipText(allNotationsTooltip(all));
+            // The direct conversion is a check on the animation - a step that glued the stack together
+            // wrongly shows up here instead of being passed off as the answer
+            String expected = all == null ? null : all.in(ExpressionEngine.Mode.values()[conversionModeCombo.getSelectedIndex()].to);
+            if (expected != null && !expected.equals(result)) {
+                showMessage("Conversion Complete, but a direct conversion gives " + expected);
+            } else {
+                showMessage("Conversion Complete!");
+            }
             String mode = (String) conversionModeCombo.getSelectedItem();
             expressionHistory.add(new ExpressionHistoryRecord(input, result, mode));
+            historyMenuStale = true;
         } else if (!isAnimating) {
             // Only show error if we're not in the middle of an animation
             resultLabel.setForeground(new Color(220, 53, 69)); // Red for errors
@@ -1641,6 +1305,35 @@ public class StackExpConViz extends JFrame {
         disableControls();
     }
 
+    // The input in every notation, parsed once the animation is done (short inputs only, null if
+    // it can't be parsed)
+    private AllNotations allNotations(String input) {
+        if (input.length() > 300) {
+            return null;
+        }
+        try {
+            return AllNotations.of(input, ExpressionEngine.Mode.values()[conversionModeCombo.getSelectedIndex()].from);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Every notation of the converted expression, for the result's tooltip
+    private String allNotationsTooltip(AllNotations all) {
+        if (all == null || all.infix.length() > 300) {
+            return null;
+        }
+        return "<html>Prefix: " + escapeHtml(all.prefix)
+                + "<br>Postfix: " + escapeHtml(all.postfix)
+                + "<br>Infix: " + escapeHtml(all.infix)
+                + "<br>Infix (fewest brackets): " + escapeHtml(all.minimalInfix) + "</html>";
+    }
+
+    // < and > are operators, so they have to be escaped inside an html tooltip
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     // Disable the step buttons when we're done
     private void disableControls() {
         nextStepButton.setEnabled(false);
@@ -1666,47 +1359,42 @@ public class StackExpConViz extends JFrame {
         String operand1 = stack.get(stack.size() - 1);
         String operand2 = stack.get(stack.size() - 2);
 
-        // Create a Glass Pane to hold all animation elements
-        JPanel glassPane = new JPanel(null); // null layout for absolute positioning
-        glassPane.setOpaque(false);
-        setGlassPane(glassPane);
-        glassPane.setVisible(true);
-
-        // Create animated labels to show the operands moving
-        JLabel floatingLabel1 = createFloatingLabel(operand1);
-        JLabel floatingLabel2 = createFloatingLabel(operand2);
+        // Sprites on the shared overlay show the operands moving
+        AnimationOverlay.Sprite floatingLabel1 = createFloatingLabel(operand1);
+        AnimationOverlay.Sprite floatingLabel2 = createFloatingLabel(operand2);
 
         // Calculate positions for the animation
         Point stackLocation = stackPanel.getLocationOnScreen();
-        SwingUtilities.convertPointFromScreen(stackLocation, glassPane);
+        SwingUtilities.convertPointFromScreen(stackLocation, animationOverlay);
 
         Point startPos = new Point(stackLocation.x + 50, stackLocation.y + 10);
         Point rightPos = new Point(startPos.x + 400, startPos.y);
         Point belowPos = new Point(rightPos.x, rightPos.y + 60);
 
-        // Add labels to glass pane with correct starting positions
-        floatingLabel1.setLocation(startPos);
-        glassPane.add(floatingLabel1);
-
-        floatingLabel2.setLocation(startPos);
-        floatingLabel2.setVisible(false);  // Hide initially
-        glassPane.add(floatingLabel2);
+        // Place sprites at their starting positions
+        animationOverlay.moveTo(floatingLabel1, startPos.x, startPos.y);
+        animationOverlay.moveTo(floatingLabel2, startPos.x, startPos.y);
+        animationOverlay.setSpriteVisible(floatingLabel2, false);  // Hide initially
 
         // Access stack elements
-        JPanel topElement = (JPanel)stackPanel.getComponent(0);
+        StackElementPanel topElement = topStackElement();
 
         // Animation timer for smoother sequencing
         final Timer[] sequence = new Timer[1];
         final int[] step = {0};
         final String[] resultValue = {""};
+        final AnimationOverlay.Sprite[] resultSprite = new AnimationOverlay.Sprite[1];
 
         sequence[0] = new Timer(50, e -> {
             step[0]++;
+            recordTick("processOperator", step[0]);
 
             // Step 1-20: Pop and move first operand
             if (step[0] == 1) {
                 addNotification("Popping first operand: " + operand1);
-                fadeOutElement(topElement, null);
+                if (topElement != null) {
+                    fadeOutElement(topElement, null);
+                }
             } else if (step[0] == 20) {
                 stack.remove(stack.size() - 1);
                 updateStackVisual();
@@ -1714,15 +1402,16 @@ public class StackExpConViz extends JFrame {
                 // Animate first operand moving right
                 float progress = (step[0] - 1) / 40.0f;
                 int x = (int)(startPos.x + (rightPos.x - startPos.x) * progress);
-                floatingLabel1.setLocation(x, startPos.y);
+                animationOverlay.moveTo(floatingLabel1, x, startPos.y);
             }
 
             // Step 41-60: Pop and show second operand
             else if (step[0] == 41) {
                 addNotification("Popping second operand: " + operand2);
-                floatingLabel2.setVisible(true);
-                if (stackPanel.getComponentCount() > 0) {
-                    fadeOutElement((JPanel)stackPanel.getComponent(0), null);
+                animationOverlay.setSpriteVisible(floatingLabel2, true);
+                StackElementPanel secondElement = topStackElement();
+                if (secondElement != null) {
+                    fadeOutElement(secondElement, null);
                 }
             } else if (step[0] == 60) {
                 stack.remove(stack.size() - 1);
@@ -1732,13 +1421,15 @@ public class StackExpConViz extends JFrame {
                 float progress = (step[0] - 60) / 20.0f;
                 int x = (int)(startPos.x + (belowPos.x - startPos.x) * progress);
                 int y = (int)(startPos.y + (belowPos.y - startPos.y) * progress);
-                floatingLabel2.setLocation(x, y);
+                animationOverlay.moveTo(floatingLabel2, x, y);
             }
 
             // Step 81-100: Create result
             else if (step[0] == 81) {
                 addNotification("Combining operands with operator '" + operator + "'");
 
+                ConversionEvents.CombineEvent combineEvent = ConversionEvents.startCombine();
+
                 // Create result expression based on conversion mode
                 String result;
                 if (isPostfixInput) {
@@ -1759,20 +1450,23 @@ public class StackExpConViz extends JFrame {
                     }
                 }
 
-                // Create and position result label above the operands
-                JLabel resultLabel = createFloatingLabel(result);
-                Point resultPos = new Point(
+                if (combineEvent != null && combineEvent.shouldCommit()) {
+                    combineEvent.mode = currentModeName();
+                    combineEvent.operator = operator;
+                    combineEvent.tokenCount = tokens == null ? 0 : tokens.length;
+                    combineEvent.stackSize = stack.size();
+                    combineEvent.resultLength = result.length();
+                    combineEvent.commit();
+                }
+
+                // Create and position result sprite above the operands
+                AnimationOverlay.Sprite resultLabel = createFloatingLabel(result);
+                animationOverlay.moveTo(resultLabel,
                         (rightPos.x + belowPos.x) / 2,
-                        Math.min(rightPos.y, belowPos.y) - 70
-                );
-                resultLabel.setLocation(resultPos);
-                glassPane.add(resultLabel);
-                glassPane.revalidate();
-                glassPane.repaint();
+                        Math.min(rightPos.y, belowPos.y) - 70);
 
                 // Save result for step 3
-                glassPane.putClientProperty("resultLabel", resultLabel);
-                glassPane.putClientProperty("resultValue", result);
+                resultSprite[0] = resultLabel;
                 resultValue[0] = result;
                 addNotification("Created expression: " + result);
 
@@ -1782,23 +1476,19 @@ public class StackExpConViz extends JFrame {
 
             // Step 101-130: Move result to stack
             else if (step[0] >= 101 && step[0] <= 130) {
-                JLabel resultLabel = (JLabel)glassPane.getClientProperty("resultLabel");
+                AnimationOverlay.Sprite resultLabel = resultSprite[0];
                 if (resultLabel != null) {
                     float progress = (step[0] - 100) / 30.0f;
                     int x = (int)(resultLabel.getX() + (startPos.x - resultLabel.getX()) * progress);
                     int y = (int)(resultLabel.getY() + (startPos.y - resultLabel.getY()) * progress);
-                    resultLabel.setLocation(x, y);
-
-                    // Keep operands visible
-                    floatingLabel1.setVisible(true);
-                    floatingLabel2.setVisible(true);
+                    animationOverlay.moveTo(resultLabel, x, y);
                 }
             }
 
             // Final step: Add result to stack and clean up
             else if (step[0] > 130) {
                 addNotification("Placing result back in stack");
-                String result = (String)glassPane.getClientProperty("resultValue");
+                String result = resultValue[0];
 
                 // Make sure to update the actual stack
                 stack.add(result);
@@ -1807,10 +1497,11 @@ public class StackExpConViz extends JFrame {
                 addNotification("Pushed '" + result + "' onto stack");
                 addOperationSeparator();
 
-                // Clean up animation
+                // Clean up animation - the sprites go back to the pool
                 sequence[0].stop();
-                glassPane.removeAll();
-                glassPane.setVisible(false);
+                animationOverlay.release(floatingLabel1);
+                animationOverlay.release(floatingLabel2);
+                animationOverlay.release(resultSprite[0]);
 
                 isAnimating = false;
                 nextStepButton.setEnabled(true);
@@ -1823,11 +1514,13 @@ public class StackExpConViz extends JFrame {
     }
 
     // Make an element fade out gradually
-    private void fadeOutElement(JPanel element, Runnable onComplete) {
+    private void fadeOutElement(StackElementPanel element, Runnable onComplete) {
         Timer fadeTimer = new Timer(50, null);
         float[] alpha = {1.0f};
+        int[] step = {0};
 
         fadeTimer.addActionListener(e -> {
+            recordTick("fadeOutElement", ++step[0]);
             alpha[0] -= 0.1f;
             if (alpha[0] <= 0) {
                 ((Timer)e.getSource()).stop();
@@ -1835,24 +1528,30 @@ public class StackExpConViz extends JFrame {
                     onComplete.run();
                 }
             } else {
-                element.setBackground(new Color(46, 139, 87, (int)(alpha[0] * 255)));
-                element.repaint();
+                element.setAlpha(alpha[0]);
             }
         });
 
         fadeTimer.start();
     }
 
-    // Create a floating label for animating stack operations
-    private JLabel createFloatingLabel(String text) {
-        JLabel label = new JLabel(text, SwingConstants.CENTER);
-        label.setFont(new Font("Segoe UI", Font.BOLD, 18));
-        label.setForeground(Color.WHITE);
-        label.setBackground(new Color(46, 139, 87));
-        label.setOpaque(true);
-        label.setBorder(BorderFactory.createLineBorder(Color.BLACK, 2));
-        label.setSize(350, 50); // Match stack element size
-        return label;
+    // Take a floating box from the overlay pool for animating stack operations
+    private AnimationOverlay.Sprite createFloatingLabel(String text) {
+        return animationOverlay.acquire(text);
+    }
+
+    // The panel showing the top of the stack, or null if there isn't one on screen
+    private StackElementPanel topStackElement() {
+        if (stackPanel.getComponentCount() == 0) {
+            return null;
+        }
+        Component first = stackPanel.getComponent(0);
+        if (first instanceof JScrollPane) {
+            // Big stacks are wrapped in a scroll pane, so look inside it
+            Container content = (Container) ((JScrollPane) first).getViewport().getView();
+            first = content.getComponentCount() > 0 ? content.getComponent(0) : null;
+        }
+        return first instanceof StackElementPanel ? (StackElementPanel) first : null;
     }
 
     // Push a value to the stack (used for operands)
@@ -1870,12 +1569,13 @@ public class StackExpConViz extends JFrame {
 
     // Helper method to check if a token is an operator
     private boolean isOperator(String token) {
-        return token.length() == 1 && operators.contains(token);
+        return ExpressionEngine.isOperator(token);
     }
 
     // Reset everything to start a new conversion
     private void resetOperation() {
         stack.clear();
+        reversalEngine.reset();
         updateStackVisual();
         topLabel.setText("Top of Stack: ");
         resultLabel.setText("Final Result: ");
@@ -1885,6 +1585,7 @@ public class StackExpConViz extends JFrame {
         notificationArea.setText(notificationContent.toString() + "</body></html>");
         currentTokenIndex = -1;
         tokens = null;
+        resultLabel.setToolTipText(null);
         expressionArrowPanel.setVisible(false);
         disableControls();
     }
@@ -1926,7 +1627,7 @@ public class StackExpConViz extends JFrame {
 
     // Helper method to create stack element panels consistently
     private JPanel createStackElement(String value) {
-        JPanel element = new JPanel(new GridBagLayout());
+        StackElementPanel element = new StackElementPanel();
         element.setMaximumSize(new Dimension(400, 50));
         element.setPreferredSize(new Dimension(400, 50));
         element.setBackground(new Color(46, 139, 87));
@@ -1937,7 +1638,7 @@ public class StackExpConViz extends JFrame {
 
         JLabel label = new JLabel(value);
         label.setForeground(Color.WHITE);
-        label.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        label.setFont(HEADING_FONT);
         element.add(label);
 
         return element;
@@ -1946,7 +1647,7 @@ public class StackExpConViz extends JFrame {
     // Make all buttons look nice with a green color
     private void styleButton(JButton button) {
         // Set basic button properties
-        button.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        button.setFont(BUTTON_FONT);
         button.setPreferredSize(new Dimension(120, 35));
         button.setFocusPainted(false);
         button.setOpaque(true);
@@ -2006,7 +1707,9 @@ public class StackExpConViz extends JFrame {
         String coloredMessage = message;
 
         // Color operators red
-        for (String operator : operators) {
+        String operatorSymbols = OperatorRegistry.symbols();
+        for (int i = 0; i < operatorSymbols.length(); i++) {
+            String operator = String.valueOf(operatorSymbols.charAt(i));
             coloredMessage = coloredMessage.replace(
                     "'" + operator + "'",
                     "'<font color='red'>" + operator + "</font>'"
@@ -2065,39 +1768,20 @@ public class StackExpConViz extends JFrame {
         autoConvertButton.setEnabled(false);
         messageLabel.setText("");
 
-        // Create a Glass Pane for animation
-        JPanel glassPane = new JPanel(null);
-        glassPane.setOpaque(false);
-        setGlassPane(glassPane);
-        glassPane.setVisible(true);
-
         // Calculate positions
         Point stackLocation = stackPanel.getLocationOnScreen();
-        SwingUtilities.convertPointFromScreen(stackLocation, glassPane);
+        SwingUtilities.convertPointFromScreen(stackLocation, animationOverlay);
         Point stackPos = new Point(stackLocation.x + 100, stackLocation.y + 10); // Moved right by 50 pixels
         Point comparePos = new Point(stackPos.x + 300, stackPos.y); // Increased distance for comparison
 
-        // Create labels for both brackets at the start
-        JLabel openLabel = new JLabel(openBracket, SwingConstants.CENTER);
-        JLabel closeLabel = new JLabel(closeBracket, SwingConstants.CENTER);
+        // Sprites for both brackets, styled like the stack elements
+        AnimationOverlay.Sprite openLabel = createFloatingLabel(openBracket);
+        AnimationOverlay.Sprite closeLabel = createFloatingLabel(closeBracket);
 
-        // Style both labels
-        for (JLabel label : new JLabel[]{openLabel, closeLabel}) {
-            label.setFont(new Font("Segoe UI", Font.BOLD, 18));
-            label.setForeground(Color.WHITE);
-            label.setBackground(new Color(46, 139, 87));
-            label.setOpaque(true);
-            label.setBorder(BorderFactory.createLineBorder(Color.BLACK, 2));
-            label.setSize(350, 50); // Match stack element size
-        }
-
-        // Position initial labels
-        closeLabel.setLocation(stackPos.x, stackPos.y - 50); // Start above stack
-        openLabel.setLocation(stackPos.x, stackPos.y); // Start at stack position
-        openLabel.setVisible(false); // Hide initially
-
-        glassPane.add(openLabel);
-        glassPane.add(closeLabel);
+        // Position initial sprites
+        animationOverlay.moveTo(closeLabel, stackPos.x, stackPos.y - 50); // Start above stack
+        animationOverlay.moveTo(openLabel, stackPos.x, stackPos.y); // Start at stack position
+        animationOverlay.setSpriteVisible(openLabel, false); // Hide initially
 
         // Animation sequence
         Timer[] sequence = new Timer[1];
@@ -2105,12 +1789,13 @@ public class StackExpConViz extends JFrame {
 
         sequence[0] = new Timer(100, e -> {
             step[0]++;
+            recordTick("animateBracketMatching", step[0]);
 
             // Phase 1: Push closing bracket to stack (steps 1-20)
             if (step[0] <= 20) {
                 float progress = step[0] / 20.0f;
                 int y = (int)(stackPos.y - 50 + progress * 50);
-                closeLabel.setLocation(stackPos.x, y);
+                animationOverlay.moveTo(closeLabel, stackPos.x, y);
 
                 if (step[0] == 20) {
                     // Actually add to stack
@@ -2122,7 +1807,7 @@ public class StackExpConViz extends JFrame {
             // Phase 2: Pop brackets and move to comparison (steps 21-40)
             else if (step[0] == 21) {
                 // Make opening bracket visible
-                openLabel.setVisible(true);
+                animationOverlay.setSpriteVisible(openLabel, true);
 
                 // Remove from stack
                 stack.remove(stack.size() - 1); // Remove closing bracket
@@ -2134,33 +1819,29 @@ public class StackExpConViz extends JFrame {
                 float progress = (step[0] - 21) / 19.0f;
                 int x = (int)(stackPos.x + (comparePos.x - stackPos.x) * progress);
 
-                openLabel.setLocation(x, stackPos.y);
-                closeLabel.setLocation(x, stackPos.y + 60); // Increased vertical separation
+                animationOverlay.moveTo(openLabel, x, stackPos.y);
+                animationOverlay.moveTo(closeLabel, x, stackPos.y + 60); // Increased vertical separation
             }
             // Phase 3: Show match animation (steps 41-60)
             else if (step[0] == 41) {
                 addNotification("Brackets match!");
                 // Change color to indicate match
-                openLabel.setBackground(new Color(46, 139, 87));
-                closeLabel.setBackground(new Color(46, 139, 87));
+                animationOverlay.setSpriteBackground(openLabel, new Color(46, 139, 87));
+                animationOverlay.setSpriteBackground(closeLabel, new Color(46, 139, 87));
             }
             // Phase 4: Fade out (steps 61-80)
             else if (step[0] > 60 && step[0] <= 80) {
                 float progress = (step[0] - 60) / 20.0f;
-                int alpha = (int)(255 * (1 - progress));
-
-                openLabel.setBackground(new Color(46, 139, 87, alpha));
-                closeLabel.setBackground(new Color(46, 139, 87, alpha));
 
-                // Also fade the text
-                openLabel.setForeground(new Color(255, 255, 255, alpha));
-                closeLabel.setForeground(new Color(255, 255, 255, alpha));
+                // Fades the box and its text together
+                animationOverlay.setAlpha(openLabel, 1 - progress);
+                animationOverlay.setAlpha(closeLabel, 1 - progress);
             }
             // Cleanup
             else if (step[0] > 80) {
                 sequence[0].stop();
-                glassPane.removeAll();
-                glassPane.setVisible(false);
+                animationOverlay.release(openLabel);
+                animationOverlay.release(closeLabel);
 
                 isAnimating = false;
                 nextStepButton.setEnabled(true);
@@ -2191,10 +1872,20 @@ public class StackExpConViz extends JFrame {
 
     // Method to display a popup menu with example expressions
     private void showExamplesMenu() {
+        // The examples never change, so each mode's menu is only built once
+        int modeIndex = conversionModeCombo.getSelectedIndex();
+        if (examplesMenus[modeIndex] == null) {
+            examplesMenus[modeIndex] = buildExamplesMenu(modeIndex);
+        }
+
+        // Show the menu near the examples button
+        examplesMenus[modeIndex].show(examplesButton, 0, examplesButton.getHeight());
+    }
+
+    private JPopupMenu buildExamplesMenu(int modeIndex) {
         JPopupMenu examplesMenu = new JPopupMenu("Examples");
 
         // Determine which sample expressions to show based on conversion mode
-        int modeIndex = conversionModeCombo.getSelectedIndex();
         int exprIndex = 0; // Default to first sample for special modes
 
         // Special handling for String Reversal and Bracket Balancing
@@ -2248,8 +1939,7 @@ public class StackExpConViz extends JFrame {
             }
         }
 
-        // Show the menu near the examples button
-        examplesMenu.show(examplesButton, 0, examplesButton.getHeight());
+        return examplesMenu;
     }
 
     // New method to add a detailed explanation with rule information
@@ -2310,22 +2000,34 @@ public class StackExpConViz extends JFrame {
 
     // Show the history of expressions
     private void showHistoryMenu() {
-        JPopupMenu historyMenu = new JPopupMenu("History");
+        // Only rebuild the menu if something was added or cleared since last time
+        if (historyMenu == null || historyMenuStale) {
+            historyMenu = buildHistoryMenu();
+            historyMenuStale = false;
+        }
+
+        // Show the menu near the history button
+        historyMenu.show(historyButton, 0, historyButton.getHeight());
+    }
+
+    private JPopupMenu buildHistoryMenu() {
+        JPopupMenu menu = new JPopupMenu("History");
 
         if (expressionHistory.isEmpty()) {
             JMenuItem emptyItem = new JMenuItem("No history available");
             emptyItem.setEnabled(false);
-            historyMenu.add(emptyItem);
+            menu.add(emptyItem);
         } else {
             // Add a clear history option
             JMenuItem clearItem = new JMenuItem("Clear History");
             clearItem.setForeground(new Color(220, 53, 69));
             clearItem.addActionListener(e -> {
                 expressionHistory.clear();
+                historyMenuStale = true;
                 showMessage("History cleared");
             });
-            historyMenu.add(clearItem);
-            historyMenu.addSeparator();
+            menu.add(clearItem);
+            menu.addSeparator();
 
             // Show most recent entries first (up to 10)
             int start = Math.max(0, expressionHistory.size() - 10);
@@ -2333,19 +2035,30 @@ public class StackExpConViz extends JFrame {
                 ExpressionHistoryRecord record = expressionHistory.get(i);
                 JMenuItem item = new JMenuItem(record.toString());
                 item.addActionListener(e -> inputField.setText(record.getInputExpression()));
-                historyMenu.add(item);
+                menu.add(item);
             }
         }
 
-        // Show the menu near the history button
-        historyMenu.show(historyButton, 0, historyButton.getHeight());
+        return menu;
     }
 
     public static void main(String[] args) {
+        StartupProbe.mark("main");
+        // Headless tools run without opening the window
+        if (args.length > 0) {
+            StartupProbe.markAtExit(args[0] + " finished");
+        }
+        if (args.length > 0 && runCommandLine(args)) {
+            return;
+        }
+
         // Suppress various warning messages from Java/Swing
         // (These were annoying me during debugging)
         System.setProperty("java.awt.suppressSwingDropSupport", "true");
 
+        // Load the operators now, so a bad -Dstackexpconviz.operators entry is still reported
+        OperatorRegistry.symbols();
+
         // Redirect error stream to suppress specific warnings
         PrintStream originalErr = System.err;
         System.setErr(new PrintStream(new OutputStream() {
@@ -2360,13 +2073,143 @@ public class StackExpConViz extends JFrame {
             visualizer.setVisible(true);
             // Restore error stream after window is shown
             System.setErr(originalErr);
+            // Only start watching once the window is up, so startup itself isn't reported
+            visualizer.startEdtWatchdog();
         });
     }
 
+    // Handle command line tools; returns false if the arguments don't ask for one
+    private static boolean runCommandLine(String[] args) {
+        if (args[0].equals("--check-brackets")) {
+            if (args.length < 2) {
+                System.err.println("Usage: StackExpConViz --check-brackets <file>");
+                System.exit(2);
+            }
+            try {
+                BracketChecker.Result result = BracketChecker.check(java.nio.file.Paths.get(args[1]));
+                System.out.println(result);
+                System.exit(result.isBalanced() ? 0 : 1);
+            } catch (java.io.IOException e) {
+                System.err.println("Could not read " + args[1] + ": " + e.getMessage());
+                System.exit(2);
+            }
+            return true;
+        }
+        if (args[0].equals("--validate")) {
+            if (args.length < 3) {
+                System.err.println("Usage: StackExpConViz --validate <prefix|postfix> <file>");
+                System.exit(2);
+            }
+            try {
+                ExpressionEngine.Notation notation = ExpressionEngine.Notation.fromName(args[1]);
+                String text = new String(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(args[2])),
+                        java.nio.charset.StandardCharsets.UTF_8).trim();
+                ArityValidator.Result result = ArityValidator.check(ExpressionLexer.lex(text, notation), notation);
+                System.out.println(result);
+                System.exit(result.isValid() ? 0 : 1);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(2);
+            } catch (java.io.IOException e) {
+                System.err.println("Could not read " + args[2] + ": " + e.getMessage());
+                System.exit(2);
+            }
+            return true;
+        }
+        if (args[0].equals("--reverse")) {
+            if (args.length < 2) {
+                System.err.println("Usage: StackExpConViz --reverse <file>");
+                System.exit(2);
+            }
+            try (java.io.Reader in = java.nio.file.Files.newBufferedReader(java.nio.file.Paths.get(args[1]));
+                 java.io.Writer out = new java.io.OutputStreamWriter(System.out, java.nio.charset.StandardCharsets.UTF_8)) {
+                new ReversalEngine().reverse(in, out);
+            } catch (java.io.IOException e) {
+                System.err.println("Could not read " + args[1] + ": " + e.getMessage());
+                System.exit(2);
+            }
+            return true;
+        }
+        if (args[0].equals("--convert-file")) {
+            if (args.length < 3) {
+                System.err.println("Usage: StackExpConViz --convert-file <mode> <file>");
+                System.exit(2);
+            }
+            try (java.io.FileOutputStream stdout = new java.io.FileOutputStream(java.io.FileDescriptor.out);
+                 ChannelSink out = new ChannelSink(stdout.getChannel())) {
+                int failed = TokenArena.convertFile(java.nio.file.Paths.get(args[2]),
+                        ExpressionEngine.Mode.fromName(args[1]), out, TokenArena.DEFAULT_BATCH_CHARS);
+                System.exit(failed == 0 ? 0 : 1);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(2);
+            } catch (java.io.IOException e) {
+                System.err.println("Could not read " + args[2] + ": " + e.getMessage());
+                System.exit(2);
+            }
+            return true;
+        }
+        if (args[0].equals("--stream-postfix")) {
+            if (args.length < 2) {
+                System.err.println("Usage: StackExpConViz --stream-postfix <file|->");
+                System.exit(2);
+            }
+            try (java.io.InputStream file = args[1].equals("-") ? System.in : new java.io.FileInputStream(args[1]);
+                 java.io.Reader in = new java.io.InputStreamReader(file, java.nio.charset.StandardCharsets.UTF_8);
+                 java.io.FileOutputStream stdout = new java.io.FileOutputStream(java.io.FileDescriptor.out);
+                 ChannelSink out = new ChannelSink(stdout.getChannel())) {
+                int failed = StreamingShuntingYard.convertLines(in, out);
+                System.exit(failed == 0 ? 0 : 1);
+            } catch (java.io.IOException e) {
+                System.err.println("Could not read " + args[1] + ": " + e.getMessage());
+                System.exit(2);
+            }
+            return true;
+        }
+        if (args[0].equals("--serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : ConversionServer.DEFAULT_PORT;
+            int maxInFlight = Integer.getInteger("stackexpconviz.maxInFlight", 256);
+            try {
+                ConversionServer server = new ConversionServer(port, maxInFlight);
+                server.start();
+                System.out.println("Serving on http://127.0.0.1:" + server.getPort() + "/ (Ctrl+C to stop)");
+            } catch (java.io.IOException e) {
+                System.err.println("Could not start server on port " + port + ": " + e.getMessage());
+                System.exit(2);
+            }
+            return true;
+        }
+        if (args[0].equals("--fuzz")) {
+            try {
+                int failures = ExpressionFuzzer.fromArgs(args, 1).run();
+                System.exit(failures == 0 ? 0 : 1);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println("Usage: StackExpConViz --fuzz [--count n] [--seed n] [--depth n] [--size n] "
+                        + "[--alphabet chars] [--brackets 0..1] [--invalid 0..1]");
+                System.exit(2);
+            }
+            return true;
+        }
+        if (args[0].equals("--daemon")) {
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            try {
+                ConversionDaemon.runOnStandardStreams(threads);
+            } catch (java.io.IOException e) {
+                System.err.println("Daemon stopped: " + e.getMessage());
+                System.exit(2);
+            }
+            return true;
+        }
+        return false;
+    }
+
     // Validate expressions as the user types
     private void validateExpressionInput() {
         String input = inputField.getText().trim();
         int modeIndex = conversionModeCombo.getSelectedIndex();
+        updateWatchdogContext(input);
+        inputField.setToolTipText(null);
 
         // Don't validate empty input
         if (input.isEmpty()) {
@@ -2398,8 +2241,7 @@ public class StackExpConViz extends JFrame {
 
             // Tokenize the input based on its format
             if (isInfixFormat) {
-                tokens = tokenizeInfixExpression(input);
-                isValid = isValidInfixExpression(tokens);
+                isValid = previewInfixConversion(input, modeIndex == 4 ? typedToPostfix : typedToPrefix);
             } else if (isPostfixFormat) {
                 tokens = tokenizeExpression(input);
                 isValid = isValidPostfixExpression(tokens);
@@ -2417,30 +2259,43 @@ public class StackExpConViz extends JFrame {
         }
     }
 
+    // Validates by converting; a valid expression shows its result as the input's tooltip
+    private boolean previewInfixConversion(String input, IncrementalConverter converter) {
+        try {
+            String result = converter.update(input);
+            inputField.setToolTipText(result.length() <= 300 ? "Converts to: " + result : null);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     // Helper to validate bracket balancing
     private boolean validateBracketBalancing(String input) {
-        Stack<Character> stack = new Stack<>();
-
-        for (int i = 0; i < input.length(); i++) {
-            char c = input.charAt(i);
+        return BracketChecker.isBalanced(input);
+    }
 
-            if (c == '(' || c == '[' || c == '{') {
-                stack.push(c);
-            } else if (c == ')' || c == ']' || c == '}') {
-                if (stack.isEmpty()) {
-                    return false;
-                }
+    // Remember the mode and input size so a stall report can say what the user was doing
+    private void updateWatchdogContext(String input) {
+        watchedMode = currentModeName();
+        watchedInputLength = input.length();
+    }
 
-                char top = stack.pop();
-                if ((c == ')' && top != '(') ||
-                        (c == ']' && top != '[') ||
-                        (c == '}' && top != '{')) {
-                    return false;
-                }
-            }
-        }
+    // Start watching the event dispatch thread for freezes
+    private void startEdtWatchdog() {
+        long threshold = Long.getLong("stackexpconviz.stallThresholdMs", 250);
+        edtWatchdog = new EdtWatchdog(threshold, 100,
+                () -> "mode=" + watchedMode + ", input=" + watchedInputLength + " chars",
+                stallMillis -> SwingUtilities.invokeLater(this::updateMetricsLabel));
+        edtWatchdog.start();
+    }
 
-        return stack.isEmpty();
+    // Show the stall counters in the info panel
+    private void updateMetricsLabel() {
+        metricsLabel.setText("UI Stalls: " + Metrics.get("edt.stalls") +
+                " (worst " + Metrics.get("edt.stall.max.ms") + " ms)");
+        metricsLabel.setToolTipText("<html>Times the UI thread was blocked longer than the stall threshold<br>" +
+                "Slowest UI response: " + Metrics.get("edt.latency.max.ms") + " ms</html>");
     }
 
     // Update UI elements based on validation result
@@ -2476,7 +2331,21 @@ public class StackExpConViz extends JFrame {
         // Choose content based on the selected conversion mode
         int modeIndex = conversionModeCombo.getSelectedIndex();
         String title = "About " + conversionModeCombo.getSelectedItem();
+        if (educationalInfo[modeIndex] == null) {
+            educationalInfo[modeIndex] = buildEducationalInfo(modeIndex, title);
+        }
+
+        // Create and show the dialog
+        JOptionPane.showMessageDialog(
+                this,
+                new JLabel(educationalInfo[modeIndex]),
+                title,
+                JOptionPane.INFORMATION_MESSAGE
+        );
+    }
 
+    // Build the HTML for the info dialog; only done the first time each mode's info is opened
+    private String buildEducationalInfo(int modeIndex, String title) {
         StringBuilder content = new StringBuilder();
         content.append("<html><body style='width: 400px; padding: 10px;'>");
         content.append("<h2>").append(title).append("</h2>");
@@ -2492,7 +2361,7 @@ public class StackExpConViz extends JFrame {
         // Add operator precedence information
         content.append("<h3>Operator Precedence (highest to lowest):</h3>");
         content.append("<ol>");
-        content.append("<li>^ (Exponentiation)</li>");
+        content.append("<li>^ (Exponentiation, right-associative: A ^ B ^ C = A ^ (B ^ C))</li>");
         content.append("<li>*, / (Multiplication, Division)</li>");
         content.append("<li>+, - (Addition, Subtraction)</li>");
         content.append("</ol>");
@@ -2569,7 +2438,7 @@ public class StackExpConViz extends JFrame {
                 content.append("</ul>");
                 content.append("<li>ELSE IF token is an operator:</li>");
                 content.append("<ul>");
-                content.append("<li>WHILE stack is not empty AND top of the stack has greater or equal precedence:</li>");
+                content.append("<li>WHILE stack is not empty AND top of the stack has greater precedence (or equal, unless the token is right-associative like ^):</li>");
                 content.append("<li>POP from the stack and APPEND to result.</li>");
                 content.append("<li>PUSH the operator to the stack.</li>");
                 content.append("</ul>");
@@ -2593,7 +2462,7 @@ public class StackExpConViz extends JFrame {
                 content.append("</ul>");
                 content.append("<li>ELSE IF token is an operator:</li>");
                 content.append("<ul>");
-                content.append("<li>WHILE stack is not empty AND top of the stack has greater or equal precedence:</li>");
+                content.append("<li>WHILE stack is not empty AND top of the stack has greater precedence (or equal, unless the token is right-associative like ^):</li>");
                 content.append("<li>POP from the stack and APPEND to result.</li>");
                 content.append("<li>PUSH the operator to the stack.</li>");
                 content.append("</ul>");
@@ -2623,13 +2492,6 @@ public class StackExpConViz extends JFrame {
 
         content.append("<div style='margin-top: 15px; font-style: italic;'>These operations are visualized step-by-step in the application.</div>");
         content.append("</body></html>");
-
-        // Create and show the dialog
-        JOptionPane.showMessageDialog(
-                this,
-                new JLabel(content.toString()),
-                title,
-                JOptionPane.INFORMATION_MESSAGE
-        );
+        return content.toString();
     }
 }
@@ -0,0 +1,36 @@
+import java.lang.management.ManagementFactory;
+
+// Measures how long startup takes, counted from when the JVM started
+// Turn it on with -Dstackexpconviz.startupProbe=true; each mark prints one line to stderr, e.g.
+//   startup: window built at 412 ms
+// With -Dstackexpconviz.exitAfterStartup=true the app quits right after the first paint, which is
+// handy for timing runs and for recording a class data sharing archive (see scripts/appcds.sh).
+final class StartupProbe {
+    static final boolean ENABLED = Boolean.getBoolean("stackexpconviz.startupProbe");
+    static final boolean EXIT_AFTER_STARTUP = Boolean.getBoolean("stackexpconviz.exitAfterStartup");
+
+    private StartupProbe() {
+    }
+
+    static void mark(String phase) {
+        if (ENABLED) {
+            // The management classes are only loaded when the probe is on, so normal startup doesn't pay for them
+            System.err.println("startup: " + phase + " at " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+        }
+    }
+
+    // Headless commands often end with System.exit, so report their total time from a shutdown hook
+    static void markAtExit(String phase) {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> mark(phase), "startup-probe"));
+        }
+    }
+
+    // Called once the window has painted for the first time
+    static void startupFinished() {
+        mark("first paint");
+        if (EXIT_AFTER_STARTUP) {
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Infix to postfix as a push-based stream: feed it tokens (or raw characters) one at a time and it
+// writes every postfix token to the sink as soon as it's final. The only thing it keeps is the stack of
+// waiting operators and open brackets, so memory depends on how deeply the expression nests, not on
+// how long it is - operand characters go straight through to the output.
+// Validation happens on the way, with the same rules as ExpressionEngine.isValidInfix; a mistake
+// throws IllegalArgumentException("Invalid Infix Expression!"), possibly after some output was written.
+final class StreamingShuntingYard {
+    private final OutputSink out;
+    // Waiting operators and open brackets
+    private char[] stack = new char[16];
+    private int top;
+    private boolean expectingOperand = true;
+    private boolean wroteToken;
+    // For accept(): are we in the middle of an operand, and how far is it through a number literal?
+    private boolean inOperand;
+    private int numberState;
+    // A + or - right after a number's e: part of the number if a digit comes next, else an operator
+    private char pendingSign;
+
+    StreamingShuntingYard(OutputSink out) {
+        this.out = out;
+    }
+
+    // Convert one token list (e.g. from ExpressionLexer.lexInfix) and finish
+    static void convert(ExpressionLexer tokens, OutputSink out) throws IOException {
+        StreamingShuntingYard converter = new StreamingShuntingYard(out);
+        for (int t = 0; t < tokens.count(); t++) {
+            char symbol = tokens.symbol(t);
+            if (OperatorRegistry.isSymbol(symbol)) {
+                converter.symbol(symbol);
+            } else {
+                converter.operand(tokens.input(), tokens.start(t), tokens.end(t));
+            }
+        }
+        converter.finish();
+    }
+
+    // Convert a stream with one infix expression per line; every line gets one output line, either
+    // the postfix or "Error: <message>" (after whatever was already written for it). Blank lines stay blank.
+    // Returns how many lines failed.
+    static int convertLines(Reader in, OutputSink out) throws IOException {
+        char[] buffer = new char[8192];
+        int failed = 0;
+        StreamingShuntingYard converter = new StreamingShuntingYard(out);
+        boolean failedLine = false;
+        boolean blankLine = true;
+        // A \n right after a \r ends nothing new, even when the two came in different reads
+        boolean afterCarriageReturn = false;
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (afterCarriageReturn) {
+                    afterCarriageReturn = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    afterCarriageReturn = c == '\r';
+                    failed += converter.endLine(failedLine, blankLine);
+                    failedLine = false;
+                    blankLine = true;
+                    continue;
+                }
+                blankLine &= Character.isWhitespace(c);
+                if (failedLine) {
+                    continue;
+                }
+                try {
+                    converter.accept(c);
+                } catch (IllegalArgumentException e) {
+                    converter.writeError(e.getMessage());
+                    failedLine = true;
+                }
+            }
+        }
+        if (!blankLine || failedLine) {
+            failed += converter.endLine(failedLine, false);
+        }
+        out.flush();
+        return failed;
+    }
+
+    private int endLine(boolean alreadyFailed, boolean blank) throws IOException {
+        int failed = 0;
+        if (!alreadyFailed && !blank) {
+            try {
+                finish();
+            } catch (IllegalArgumentException e) {
+                writeError(e.getMessage());
+                failed = 1;
+            }
+        }
+        out.append('\n');
+        reset();
+        return alreadyFailed ? 1 : failed;
+    }
+
+    private void writeError(String message) throws IOException {
+        if (wroteToken) {
+            out.append(' ');
+        }
+        out.append("Error: ");
+        out.append(message);
+        reset();
+    }
+
+    // Start over for the next expression
+    void reset() {
+        top = 0;
+        expectingOperand = true;
+        wroteToken = false;
+        inOperand = false;
+        pendingSign = 0;
+    }
+
+    // Raw characters, lexed with the infix rules: operators and brackets stand alone, whitespace
+    // separates operands, anything else is part of an operand and is written out right away.
+    // Like ExpressionLexer, the sign in "1e-5" belongs to the number; that needs one char of lookahead.
+    void accept(char c) throws IOException {
+        if (pendingSign != 0) {
+            char sign = pendingSign;
+            pendingSign = 0;
+            if (c >= '0' && c <= '9') {
+                out.append(sign);
+                numberState = NumberLiteral.next(numberState, sign);
+            } else {
+                inOperand = false;
+                symbol(sign);
+            }
+        }
+        if (Character.isWhitespace(c)) {
+            inOperand = false;
+        } else if (OperatorRegistry.isSymbol(c)) {
+            if (inOperand && numberState == NumberLiteral.EXPONENT_MARK && NumberLiteral.isSign(c)) {
+                pendingSign = c;
+                return;
+            }
+            inOperand = false;
+            symbol(c);
+        } else {
+            if (!inOperand) {
+                startOperand();
+                inOperand = true;
+                numberState = NumberLiteral.START;
+            }
+            out.append(c);
+            numberState = NumberLiteral.next(numberState, c);
+        }
+    }
+
+    void operand(CharSequence text, int start, int end) throws IOException {
+        startOperand();
+        out.append(text, start, end);
+    }
+
+    private void startOperand() throws IOException {
+        if (!expectingOperand) {
+            throw invalid();
+        }
+        expectingOperand = false;
+        separator();
+    }
+
+    // An operator or a bracket
+    void symbol(char c) throws IOException {
+        if (OperatorRegistry.isOperator(c)) {
+            if (expectingOperand) {
+                throw invalid();
+            }
+            while (top > 0 && !OperatorRegistry.isOpenBracket(stack[top - 1])
+                    && ExpressionEngine.popsBefore(stack[top - 1], c)) {
+                emit(stack[--top]);
+            }
+            push(c);
+            expectingOperand = true;
+        } else if (OperatorRegistry.isOpenBracket(c)) {
+            if (!expectingOperand) {
+                throw invalid();
+            }
+            push(c);
+        } else if (OperatorRegistry.isCloseBracket(c)) {
+            if (expectingOperand) {
+                throw invalid();
+            }
+            while (top > 0 && !OperatorRegistry.isOpenBracket(stack[top - 1])) {
+                emit(stack[--top]);
+            }
+            if (top == 0 || stack[--top] != OperatorRegistry.partner(c)) {
+                throw invalid();
+            }
+        } else {
+            throw new IllegalArgumentException("Not an operator or bracket: " + c);
+        }
+    }
+
+    // End of the expression: write the operators that are still waiting
+    void finish() throws IOException {
+        inOperand = false;
+        if (pendingSign != 0) {
+            char sign = pendingSign;
+            pendingSign = 0;
+            symbol(sign);
+        }
+        if (expectingOperand) {
+            throw invalid();
+        }
+        while (top > 0) {
+            char c = stack[--top];
+            if (OperatorRegistry.isOpenBracket(c)) {
+                throw invalid();
+            }
+            emit(c);
+        }
+    }
+
+    private void push(char c) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = c;
+    }
+
+    private void emit(char operator) throws IOException {
+        separator();
+        out.append(operator);
+    }
+
+    private void separator() throws IOException {
+        if (wroteToken) {
+            out.append(' ');
+        }
+        wroteToken = true;
+    }
+
+    private static IllegalArgumentException invalid() {
+        return new IllegalArgumentException("Invalid Infix Expression!");
+    }
+}
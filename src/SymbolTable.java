@@ -0,0 +1,82 @@
+import java.util.Arrays;
+
+// Operand names numbered in the order they first show up, each stored once
+// Open addressing over the ids, hashed and compared on the input chars themselves, so looking up
+// a repeated operand never makes a String.
+final class SymbolTable {
+    private String[] symbols = new String[16];
+    private int[] hashes = new int[16];
+    private int count;
+    // symbol id + 1 per slot, 0 = empty; kept at most half full
+    private int[] slots = new int[32];
+
+    // Id of input[start, end), adding it if it's new
+    int id(CharSequence input, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + input.charAt(i);
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                break;
+            }
+            if (hashes[id] == hash && sameText(symbols[id], input, start, end)) {
+                return id;
+            }
+        }
+        int id = count;
+        if (count == symbols.length) {
+            symbols = Arrays.copyOf(symbols, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        symbols[count] = input.subSequence(start, end).toString();
+        hashes[count++] = hash;
+        if (count * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(id, mask);
+        }
+        return id;
+    }
+
+    int id(String symbol) {
+        return id(symbol, 0, symbol.length());
+    }
+
+    String get(int id) {
+        return symbols[id];
+    }
+
+    int size() {
+        return count;
+    }
+
+    private static boolean sameText(String symbol, CharSequence input, int start, int end) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != input.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int id, int mask) {
+        int slot = hashes[id] & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private void rehash(int size) {
+        slots = new int[size];
+        for (int id = 0; id < count; id++) {
+            insert(id, size - 1);
+        }
+    }
+}
@@ -0,0 +1,494 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Off-heap storage for a whole batch of expressions: their text, tokens and trees
+// Big batch jobs would otherwise keep millions of small Strings and arrays alive and keep the GC busy.
+// Here everything lives in a few large MemorySegments owned by one Arena: add expressions, convert or
+// evaluate them straight from the segments, then close() the arena to free the whole batch at once.
+// Tokens are just (start, length) pairs pointing into the stored text (ExpressionLexer runs over it
+// in place) - no token Strings are made.
+// Trees use the same layout as CompactExpression (postfix-ordered opcode/left/right), except that an
+// operand's opcode points at its token instead of a symbol table.
+// One arena holds up to Integer.MAX_VALUE chars; use one arena per batch for more than that.
+// The arena is shared, so several threads may read it, but only one thread should add to it.
+final class TokenArena implements AutoCloseable {
+    private static final long ALIGNMENT = 8;
+    // How much text convertFile puts in one arena before converting and freeing it
+    static final int DEFAULT_BATCH_CHARS = 16 << 20;
+
+    private final Arena arena = Arena.ofShared();
+
+    // Concatenated text of all expressions
+    private final Column text = new Column(ValueLayout.JAVA_CHAR, 1 << 16);
+    // Per token: start offset in text and length
+    private final Column tokenStart = new Column(ValueLayout.JAVA_INT, 1 << 14);
+    private final Column tokenLength = new Column(ValueLayout.JAVA_INT, 1 << 14);
+    // Per tree node, in postfix order: operator char, or ~token for operands; child node indices
+    private final Column opcode = new Column(ValueLayout.JAVA_INT, 1 << 14);
+    private final Column left = new Column(ValueLayout.JAVA_INT, 1 << 14);
+    private final Column right = new Column(ValueLayout.JAVA_INT, 1 << 14);
+    // Per expression: first token, first node (the tree's nodes end where the next one's start)
+    private final Column firstToken = new Column(ValueLayout.JAVA_INT, 1 << 10);
+    private final Column firstNode = new Column(ValueLayout.JAVA_INT, 1 << 10);
+
+    private int textSize;
+    private int tokenCount;
+    private int nodeCount;
+    private int expressionCount;
+
+    // Scratch stacks for building trees, reused for every expression
+    private int[] subtrees = new int[64];
+    private int[] operators = new int[64];
+    private int[] operandsDone = new int[64];
+
+    // A growable off-heap array. Growing allocates a bigger segment from the same arena and copies;
+    // the old one is only released with the arena, which at most doubles the footprint.
+    private final class Column {
+        private final ValueLayout layout;
+        private MemorySegment segment;
+        private long capacity;
+
+        Column(ValueLayout layout, long initialCapacity) {
+            this.layout = layout;
+            this.capacity = initialCapacity;
+            this.segment = arena.allocate(initialCapacity * layout.byteSize(), ALIGNMENT);
+        }
+
+        void ensure(long needed) {
+            if (needed <= capacity) {
+                return;
+            }
+            long newCapacity = Math.max(needed, capacity * 2);
+            MemorySegment bigger = arena.allocate(newCapacity * layout.byteSize(), ALIGNMENT);
+            MemorySegment.copy(segment, 0, bigger, 0, capacity * layout.byteSize());
+            segment = bigger;
+            capacity = newCapacity;
+        }
+
+        int getInt(long index) {
+            return segment.getAtIndex(ValueLayout.JAVA_INT, index);
+        }
+
+        void setInt(long index, int value) {
+            segment.setAtIndex(ValueLayout.JAVA_INT, index, value);
+        }
+
+        char getChar(long index) {
+            return segment.getAtIndex(ValueLayout.JAVA_CHAR, index);
+        }
+
+        void setChar(long index, char value) {
+            segment.setAtIndex(ValueLayout.JAVA_CHAR, index, value);
+        }
+    }
+
+    // Convert every line of a file, one arena per batch of lines; a line that can't be converted
+    // gets "Error: <message>" instead. Blank lines stay blank, like in --stream-postfix. Returns how
+    // many lines failed.
+    static int convertFile(Path file, ExpressionEngine.Mode mode, OutputSink out, int batchChars) throws IOException {
+        int failed = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            while (line != null) {
+                try (TokenArena arena = new TokenArena()) {
+                    // Index of each line's expression, its error message, or null for a blank line
+                    List<Object> batch = new ArrayList<>();
+                    long chars = 0;
+                    while (line != null && chars < batchChars) {
+                        chars += line.length();
+                        try {
+                            batch.add(line.trim().isEmpty() ? null : arena.add(line, mode.from));
+                        } catch (IllegalArgumentException e) {
+                            batch.add(e.getMessage());
+                        }
+                        line = in.readLine();
+                    }
+                    for (Object entry : batch) {
+                        if (entry instanceof Integer) {
+                            arena.render((Integer) entry, mode.to, out);
+                        } else if (entry != null) {
+                            out.append("Error: ");
+                            out.append((String) entry);
+                            failed++;
+                        }
+                        out.append('\n');
+                    }
+                }
+            }
+        }
+        out.flush();
+        return failed;
+    }
+
+    // Copy an expression into the arena, split it into tokens and build its tree
+    // Returns its index; throws IllegalArgumentException (with the converter's messages) if it's invalid,
+    // in which case nothing is kept.
+    int add(CharSequence expression, ExpressionEngine.Notation notation) {
+        int savedText = textSize;
+        int savedTokens = tokenCount;
+        int savedNodes = nodeCount;
+        try {
+            int start = storeText(expression);
+            // Lex the stored copy, so the token offsets point into the arena
+            ExpressionLexer tokens = ExpressionLexer.lex(new TextView(start, textSize - start), notation);
+            tokenStart.ensure(tokenCount + tokens.count());
+            tokenLength.ensure(tokenCount + tokens.count());
+            for (int t = 0; t < tokens.count(); t++) {
+                tokenStart.setInt(tokenCount, start + tokens.start(t));
+                tokenLength.setInt(tokenCount++, tokens.length(t));
+            }
+            if (notation == ExpressionEngine.Notation.INFIX) {
+                if (!ExpressionEngine.isValidInfix(tokens)) {
+                    throw new IllegalArgumentException("Invalid Infix Expression!");
+                }
+            } else {
+                if (tokenCount - savedTokens < 2) {
+                    throw new IllegalArgumentException("Expression must have at least one operator and one operand!");
+                }
+            }
+            buildTree(savedTokens, notation);
+        } catch (IllegalArgumentException e) {
+            textSize = savedText;
+            tokenCount = savedTokens;
+            nodeCount = savedNodes;
+            throw e;
+        }
+
+        firstToken.ensure(expressionCount + 2);
+        firstNode.ensure(expressionCount + 2);
+        firstToken.setInt(expressionCount, savedTokens);
+        firstNode.setInt(expressionCount, savedNodes);
+        firstToken.setInt(expressionCount + 1, tokenCount);
+        firstNode.setInt(expressionCount + 1, nodeCount);
+        return expressionCount++;
+    }
+
+    int expressionCount() {
+        return expressionCount;
+    }
+
+    int tokenCount(int expression) {
+        return firstToken.getInt(expression + 1) - firstToken.getInt(expression);
+    }
+
+    int nodeCount(int expression) {
+        return firstNode.getInt(expression + 1) - firstNode.getInt(expression);
+    }
+
+    // Bytes of off-heap memory in use (not counting space freed up by growing)
+    long usedBytes() {
+        return textSize * 2L + tokenCount * 8L + nodeCount * 12L + expressionCount * 8L;
+    }
+
+    // A token as a CharSequence view of the off-heap text (nothing is copied until toString())
+    CharSequence token(int expression, int index) {
+        int token = firstToken.getInt(expression) + index;
+        return new TextView(tokenStart.getInt(token), tokenLength.getInt(token));
+    }
+
+    // Stream the expression in another notation into out; same text as ExpressionEngine.convert
+    void render(int expression, ExpressionEngine.Notation notation, OutputSink out) throws IOException {
+        int first = firstNode.getInt(expression);
+        int last = firstNode.getInt(expression + 1) - 1;
+        switch (notation) {
+            case POSTFIX:
+                for (int node = first; node <= last; node++) {
+                    if (node > first) {
+                        out.append(' ');
+                    }
+                    appendNode(node, out);
+                }
+                break;
+            case PREFIX:
+                renderPrefix(last, out);
+                break;
+            default:
+                renderInfix(last, out);
+        }
+    }
+
+    String convert(int expression, ExpressionEngine.Notation notation) {
+        StringBuilder out = new StringBuilder(tokenCount(expression) * 4);
+        try {
+            render(expression, notation, OutputSink.of(out));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder doesn't throw
+        }
+        return out.toString();
+    }
+
+    // Like CompactExpression.evaluate, reading the tree straight from the arena
+    double evaluate(int expression, Map<String, Double> variables) {
+        int first = firstNode.getInt(expression);
+        int count = nodeCount(expression);
+        double[] values = new double[count];
+        // Numbers are parsed and names interned straight from the arena's text; only the first
+        // occurrence of each name is copied, to look it up
+        CharSequence all = new TextView(0, textSize);
+        SymbolTable names = new SymbolTable();
+        double[] nameValues = new double[16];
+        for (int i = 0; i < count; i++) {
+            int node = first + i;
+            int code = opcode.getInt(node);
+            if (code >= 0) {
+                values[i] = OperatorRegistry.apply((char) code,
+                        values[left.getInt(node) - first], values[right.getInt(node) - first]);
+            } else {
+                int start = tokenStart.getInt(~code);
+                int end = start + tokenLength.getInt(~code);
+                double number = NumberLiteral.parse(all, start, end);
+                if (!Double.isNaN(number)) {
+                    values[i] = number;
+                    continue;
+                }
+                int known = names.size();
+                int id = names.id(all, start, end);
+                if (id == known) {
+                    if (id == nameValues.length) {
+                        nameValues = Arrays.copyOf(nameValues, id * 2);
+                    }
+                    nameValues[id] = CompactExpression.operandValue(names.get(id), variables);
+                }
+                values[i] = nameValues[id];
+            }
+        }
+        return values[count - 1];
+    }
+
+    // Free every segment of this batch at once
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // Stores the expression trimmed like String.trim(); returns where it starts
+    private int storeText(CharSequence expression) {
+        int from = 0;
+        int to = expression.length();
+        while (from < to && expression.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && expression.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            throw new IllegalArgumentException("Please enter an expression!");
+        }
+        int start = textSize;
+        if ((long) start + (to - from) > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Arena is full; start a new batch");
+        }
+        text.ensure((long) start + (to - from));
+        for (int i = from; i < to; i++) {
+            text.setChar(start + i - from, expression.charAt(i));
+        }
+        textSize = start + to - from;
+        return start;
+    }
+
+    // Single-char token at index, or 0 for longer tokens
+    private char symbolAt(int token) {
+        return tokenLength.getInt(token) == 1 ? text.getChar(tokenStart.getInt(token)) : 0;
+    }
+
+    private void buildTree(int first, ExpressionEngine.Notation notation) {
+        int count = tokenCount - first;
+        if (subtrees.length < count) {
+            subtrees = new int[count];
+            operators = new int[count];
+            operandsDone = new int[count];
+        }
+        opcode.ensure(nodeCount + count);
+        left.ensure(nodeCount + count);
+        right.ensure(nodeCount + count);
+
+        int subtreeCount = 0;
+        int waiting = 0;
+        int nodesBefore = nodeCount;
+        for (int t = first; t < tokenCount; t++) {
+            char c = symbolAt(t);
+            if (notation == ExpressionEngine.Notation.POSTFIX) {
+                subtreeCount = OperatorRegistry.isOperator(c) ? addOperator(c, subtreeCount) : addOperand(t, subtreeCount);
+            } else if (notation == ExpressionEngine.Notation.PREFIX) {
+                // Operators wait until both operands are finished, so nodes still come out in postfix order
+                if (OperatorRegistry.isOperator(c)) {
+                    operators[waiting] = c;
+                    operandsDone[waiting++] = 0;
+                    continue;
+                }
+                if (waiting == 0 && nodeCount > nodesBefore) {
+                    throw new IllegalArgumentException("Invalid Expression!");
+                }
+                subtreeCount = addOperand(t, subtreeCount);
+                while (waiting > 0 && ++operandsDone[waiting - 1] == 2) {
+                    subtreeCount = addOperator((char) operators[--waiting], subtreeCount);
+                }
+            } else {
+                // Shunting-yard; operators and open brackets wait on the operators stack
+                if (OperatorRegistry.isOperator(c)) {
+                    while (waiting > 0 && !OperatorRegistry.isOpenBracket((char) operators[waiting - 1])
+                            && ExpressionEngine.popsBefore((char) operators[waiting - 1], c)) {
+                        subtreeCount = addOperator((char) operators[--waiting], subtreeCount);
+                    }
+                    operators[waiting++] = c;
+                } else if (OperatorRegistry.isOpenBracket(c)) {
+                    operators[waiting++] = c;
+                } else if (OperatorRegistry.isCloseBracket(c)) {
+                    while (!OperatorRegistry.isOpenBracket((char) operators[waiting - 1])) {
+                        subtreeCount = addOperator((char) operators[--waiting], subtreeCount);
+                    }
+                    waiting--;
+                } else {
+                    subtreeCount = addOperand(t, subtreeCount);
+                }
+            }
+        }
+        if (notation == ExpressionEngine.Notation.INFIX) {
+            while (waiting > 0) {
+                subtreeCount = addOperator((char) operators[--waiting], subtreeCount);
+            }
+        }
+        if (subtreeCount != 1 || waiting != 0) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+    }
+
+    private int addOperand(int token, int subtreeCount) {
+        opcode.setInt(nodeCount, ~token);
+        left.setInt(nodeCount, -1);
+        right.setInt(nodeCount, -1);
+        subtrees[subtreeCount] = nodeCount++;
+        return subtreeCount + 1;
+    }
+
+    private int addOperator(char operator, int subtreeCount) {
+        if (subtreeCount < 2) {
+            throw new IllegalArgumentException("Invalid Expression!");
+        }
+        opcode.setInt(nodeCount, operator);
+        right.setInt(nodeCount, subtrees[subtreeCount - 1]);
+        left.setInt(nodeCount, subtrees[subtreeCount - 2]);
+        subtrees[subtreeCount - 2] = nodeCount++;
+        return subtreeCount - 1;
+    }
+
+    private void appendNode(int node, OutputSink out) throws IOException {
+        int code = opcode.getInt(node);
+        if (code >= 0) {
+            out.append((char) code);
+            return;
+        }
+        int start = tokenStart.getInt(~code);
+        int end = start + tokenLength.getInt(~code);
+        for (int i = start; i < end; i++) {
+            out.append(text.getChar(i));
+        }
+    }
+
+    private void renderPrefix(int root, OutputSink out) throws IOException {
+        int[] stack = new int[Math.max(1, nodeCountBelow(root))];
+        int top = 0;
+        stack[top++] = root;
+        boolean first = true;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!first) {
+                out.append(' ');
+            }
+            first = false;
+            appendNode(node, out);
+            if (opcode.getInt(node) >= 0) {
+                stack[top++] = right.getInt(node);
+                stack[top++] = left.getInt(node);
+            }
+        }
+    }
+
+    // Stack entries are node * 3 + step, as in CompactExpression.writeInfix
+    private void renderInfix(int root, OutputSink out) throws IOException {
+        long[] stack = new long[nodeCountBelow(root) * 2 + 1];
+        int top = 0;
+        stack[top++] = root * 3L;
+        while (top > 0) {
+            long entry = stack[--top];
+            int node = (int) (entry / 3);
+            int code = opcode.getInt(node);
+            switch ((int) (entry % 3)) {
+                case 0:
+                    if (code < 0) {
+                        appendNode(node, out);
+                    } else {
+                        out.append('(');
+                        stack[top++] = node * 3L + 2;
+                        stack[top++] = right.getInt(node) * 3L;
+                        stack[top++] = node * 3L + 1;
+                        stack[top++] = left.getInt(node) * 3L;
+                    }
+                    break;
+                case 1:
+                    out.append(' ');
+                    out.append((char) code);
+                    out.append(' ');
+                    break;
+                default:
+                    out.append(')');
+            }
+        }
+    }
+
+    // Nodes of the tree rooted here - the tree is the last nodes up to and including its root
+    private int nodeCountBelow(int root) {
+        int first = root;
+        // Leftmost descendant is the first node of the subtree in postfix order
+        while (opcode.getInt(first) >= 0) {
+            first = left.getInt(first);
+        }
+        return root - first + 1;
+    }
+
+    // Read-only window onto the arena's text
+    private final class TextView implements CharSequence {
+        private final int start;
+        private final int length;
+
+        TextView(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.getChar(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new TextView(start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = text.getChar(start + i);
+            }
+            return new String(chars);
+        }
+    }
+}